@@ -0,0 +1,188 @@
+package ch.ubique.notifyme.app.network;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ch.ubique.notifyme.base.utils.Storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TraceKeyMatchingPipelineTest {
+
+	private static final String LOG_TAG = "TraceKeyPipelineTest";
+	private static final int ASSOCIATED_DATA_SIZE = 100;
+	private static final int CHUNK_SIZE = 100;
+
+	private Context context;
+	private Storage storage;
+	private TraceKeyServer server;
+	private TraceKeyPayloadGenerator generator;
+	private long previousLastKeyBundleTag;
+	private long previousPartialSyncKeyBundleTag;
+	private long previousPartialSyncMatchedEventCount;
+
+	@Before
+	public void setUp() throws IOException {
+		context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		storage = Storage.getInstance(context);
+		previousLastKeyBundleTag = storage.getLastKeyBundleTag();
+		previousPartialSyncKeyBundleTag = storage.getPartialSyncKeyBundleTag();
+		previousPartialSyncMatchedEventCount = storage.getPartialSyncMatchedEventCount();
+		// Also clears the partial sync state
+		storage.setLastKeyBundleTag(0);
+		server = new TraceKeyServer();
+		server.start();
+		generator = new TraceKeyPayloadGenerator(42, ASSOCIATED_DATA_SIZE);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+		storage.setLastKeyBundleTag(previousLastKeyBundleTag);
+		if (previousPartialSyncKeyBundleTag != -1) {
+			storage.setPartialSync(previousPartialSyncKeyBundleTag, previousPartialSyncMatchedEventCount);
+		}
+	}
+
+	@Test
+	public void loadsOnlyBundlesAfterLastKeyBundleTag() throws InterruptedException {
+		server.publish(1000, generator.createEvents(300));
+		server.publish(2000, generator.createEvents(200));
+
+		TraceKeyMatchingPipeline.Result result = sync(CHUNK_SIZE);
+		assertNotNull(result);
+		assertEquals(2000, result.getKeyBundleTag());
+		assertEquals(500, result.getDownloadedEventCount());
+		assertEquals(500, result.getEventCount());
+		assertEquals("0", server.takeRequest().getRequestUrl().queryParameter("lastKeyBundleTag"));
+
+		server.publish(3000, generator.createEvents(50));
+		result = sync(CHUNK_SIZE);
+		assertNotNull(result);
+		assertEquals(3000, result.getKeyBundleTag());
+		assertEquals(50, result.getDownloadedEventCount());
+		assertEquals("2000", server.takeRequest().getRequestUrl().queryParameter("lastKeyBundleTag"));
+
+		result = sync(CHUNK_SIZE);
+		assertNotNull(result);
+		assertEquals(3000, result.getKeyBundleTag());
+		assertEquals(0, result.getDownloadedEventCount());
+	}
+
+	@Test
+	public void keepsLastKeyBundleTagOnHttpError() {
+		server.publish(1000, generator.createEvents(100));
+		server.enqueueFailure(TraceKeyServer.Failure.HTTP_ERROR);
+
+		assertNull(sync(CHUNK_SIZE));
+		assertEquals(0, storage.getLastKeyBundleTag());
+		assertEquals(-1, storage.getPartialSyncKeyBundleTag());
+
+		TraceKeyMatchingPipeline.Result result = sync(CHUNK_SIZE);
+		assertNotNull(result);
+		assertEquals(100, result.getDownloadedEventCount());
+	}
+
+	@Test
+	public void resumesAfterInterruptedDownload() {
+		int eventCount = 10000;
+		server.publish(1000, generator.createEvents(eventCount));
+		server.enqueueFailure(TraceKeyServer.Failure.DISCONNECT_DURING_BODY);
+
+		assertNull(sync(CHUNK_SIZE));
+		assertEquals(0, storage.getLastKeyBundleTag());
+		assertEquals(1000, storage.getPartialSyncKeyBundleTag());
+		long matchedEventCount = storage.getPartialSyncMatchedEventCount();
+		assertTrue(matchedEventCount > 0 && matchedEventCount < eventCount);
+		// Only complete chunks are matched and every event passes the prefilter
+		assertEquals(0, matchedEventCount % CHUNK_SIZE);
+
+		TraceKeyMatchingPipeline.Result result = sync(CHUNK_SIZE);
+		assertNotNull(result);
+		assertEquals(eventCount - matchedEventCount, result.getDownloadedEventCount());
+		assertEquals(eventCount - matchedEventCount, result.getEventCount());
+		assertEquals(-1, storage.getPartialSyncKeyBundleTag());
+	}
+
+	@Test
+	public void doesNotSkipEventsOfOtherResponse() {
+		server.publish(1000, generator.createEvents(5000));
+		server.enqueueFailure(TraceKeyServer.Failure.DISCONNECT_DURING_BODY);
+		assertNull(sync(CHUNK_SIZE));
+		assertEquals(1000, storage.getPartialSyncKeyBundleTag());
+
+		// A new bundle changes the key bundle tag of the response, so the whole response has to be matched again
+		server.publish(2000, generator.createEvents(100));
+		TraceKeyMatchingPipeline.Result result = sync(CHUNK_SIZE);
+		assertNotNull(result);
+		assertEquals(2000, result.getKeyBundleTag());
+		assertEquals(5100, result.getDownloadedEventCount());
+	}
+
+	@Test
+	public void networkTimeIncludesLatencyAndBandwidth() {
+		server.publish(1000, generator.createEvents(1000));
+		server.setBodyDelay(500, TimeUnit.MILLISECONDS);
+		TraceKeyMatchingPipeline.Result result = sync(CHUNK_SIZE);
+		assertNotNull(result);
+		assertTrue(result.toString(), result.getNetworkTimeNanos() >= TimeUnit.MILLISECONDS.toNanos(500));
+
+		storage.setLastKeyBundleTag(0);
+		server.setBodyDelay(0, TimeUnit.MILLISECONDS);
+		long bytesPerSecond = result.getBytesRead();
+		server.setBandwidth(bytesPerSecond);
+		result = sync(CHUNK_SIZE);
+		assertNotNull(result);
+		// The throttled transfer of the whole body takes about a second
+		assertTrue(result.toString(), result.getNetworkTimeNanos() >= TimeUnit.MILLISECONDS.toNanos(800));
+		assertTrue(result.toString(), result.getNetworkTimeNanos() <= result.getTotalTimeNanos());
+	}
+
+	@Test
+	public void throughput() {
+		int eventCount = 100000;
+		server.publish(1000, generator.createEvents(eventCount));
+		int[][] configurations = new int[][] {
+				{ CHUNK_SIZE, 1 },
+				{ CHUNK_SIZE, TraceKeyMatchingPipeline.DEFAULT_QUEUE_DEPTH },
+				{ TraceKeyMatchingPipeline.DEFAULT_CHUNK_SIZE, TraceKeyMatchingPipeline.DEFAULT_QUEUE_DEPTH },
+				{ 5000, TraceKeyMatchingPipeline.DEFAULT_QUEUE_DEPTH }
+		};
+		for (int[] configuration : configurations) {
+			storage.setLastKeyBundleTag(0);
+			TraceKeyMatchingPipeline.Result result = sync(configuration[0], configuration[1]);
+			assertNotNull(result);
+			assertEquals(eventCount, result.getDownloadedEventCount());
+			assertEquals(eventCount, result.getEventCount());
+			Log.i(LOG_TAG, "chunk size " + configuration[0] + ", queue depth " + configuration[1] + ": " +
+					eventCount * TimeUnit.SECONDS.toNanos(1) / result.getTotalTimeNanos() + " events/s, " + result);
+		}
+	}
+
+	/**
+	 * Runs the pipeline like the KeyLoadWorker, which stores the key bundle tag on success
+	 */
+	private TraceKeyMatchingPipeline.Result sync(int chunkSize) {
+		return sync(chunkSize, TraceKeyMatchingPipeline.DEFAULT_QUEUE_DEPTH);
+	}
+
+	private TraceKeyMatchingPipeline.Result sync(int chunkSize, int queueDepth) {
+		TraceKeyMatchingPipeline pipeline = new TraceKeyMatchingPipeline(context, chunkSize, queueDepth);
+		return pipeline.run(new TraceKeysServiceController(context, server.getBaseUrl()), exposures -> { });
+	}
+
+}
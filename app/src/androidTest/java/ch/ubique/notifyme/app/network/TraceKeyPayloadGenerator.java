@@ -0,0 +1,63 @@
+package ch.ubique.notifyme.app.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.protobuf.ByteString;
+
+import ch.ubique.notifyme.app.model.Proto;
+
+/**
+ * Generates random problematic events in the format served by the backend. The start and end times are before 1973, so
+ * the events are never dropped by the {@link TimeWindowPrefilter}, independently of the check-ins on the test device.
+ */
+public class TraceKeyPayloadGenerator {
+
+	private static final int VERSION = 3;
+	private static final long ONE_HOUR = 60 * 60 * 1000;
+
+	private final Random random;
+	private final int associatedDataSize;
+	private int eventCount = 0;
+
+	/**
+	 * @param associatedDataSize the size of the encrypted associated data of every event, which makes up most of its size
+	 */
+	public TraceKeyPayloadGenerator(long seed, int associatedDataSize) {
+		this.random = new Random(seed);
+		this.associatedDataSize = associatedDataSize;
+	}
+
+	public List<Proto.ProblematicEvent> createEvents(int count) {
+		ArrayList<Proto.ProblematicEvent> events = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			long startTime = eventCount++ % 1000 * ONE_HOUR;
+			events.add(Proto.ProblematicEvent.newBuilder()
+					.setVersion(VERSION)
+					.setIdentity(randomBytes(32))
+					.setSecretKeyForIdentity(randomBytes(64))
+					.setStartTime(startTime)
+					.setEndTime(startTime + ONE_HOUR)
+					.setEncryptedAssociatedData(randomBytes(associatedDataSize))
+					.setCipherTextNonce(randomBytes(24))
+					.build());
+		}
+		return events;
+	}
+
+	public static byte[] toPayload(List<Proto.ProblematicEvent> events) {
+		return Proto.ProblematicEventWrapper.newBuilder()
+				.setVersion(VERSION)
+				.addAllEvents(events)
+				.build()
+				.toByteArray();
+	}
+
+	private ByteString randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return ByteString.copyFrom(bytes);
+	}
+
+}
@@ -0,0 +1,133 @@
+package ch.ubique.notifyme.app.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import ch.ubique.notifyme.app.model.Proto;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+/**
+ * Local stand-in for the v3/traceKeys endpoint of the backend. The published events are grouped into key bundles, a request
+ * returns the events of all bundles with a tag greater than its lastKeyBundleTag and the tag of the latest of these bundles in
+ * the x-key-bundle-tag header, or its lastKeyBundleTag if there are none. Latency, bandwidth and failures can be injected.
+ */
+public class TraceKeyServer implements Closeable {
+
+	private static final String TRACE_KEYS_PATH = "/v3/traceKeys";
+	private static final String KEY_BUNDLE_TAG_HEADER = "x-key-bundle-tag";
+	private static final long THROTTLE_PERIOD_MILLIS = 100;
+
+	public enum Failure {
+		HTTP_ERROR,
+		/**
+		 * Closes the connection after half of the response body
+		 */
+		DISCONNECT_DURING_BODY
+	}
+
+	private final MockWebServer server = new MockWebServer();
+	private final TreeMap<Long, List<Proto.ProblematicEvent>> keyBundles = new TreeMap<>();
+	private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+	private volatile long bodyDelayMillis = 0;
+	private volatile long bytesPerSecond = 0;
+
+	public TraceKeyServer() {
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				return respond(request);
+			}
+		});
+	}
+
+	public void start() throws IOException {
+		server.start();
+	}
+
+	public String getBaseUrl() {
+		return server.url("/").toString();
+	}
+
+	public synchronized void publish(long keyBundleTag, List<Proto.ProblematicEvent> events) {
+		keyBundles.put(keyBundleTag, new ArrayList<>(events));
+	}
+
+	/**
+	 * Delays every response body, after the headers have been sent
+	 */
+	public void setBodyDelay(long delay, TimeUnit unit) {
+		bodyDelayMillis = unit.toMillis(delay);
+	}
+
+	/**
+	 * @param bytesPerSecond the bandwidth of the response bodies, or 0 for no limit
+	 */
+	public void setBandwidth(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * Lets the next request fail, enqueued failures are applied to consecutive requests in order
+	 */
+	public void enqueueFailure(Failure failure) {
+		failures.add(failure);
+	}
+
+	public RecordedRequest takeRequest() throws InterruptedException {
+		return server.takeRequest();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.shutdown();
+	}
+
+	private MockResponse respond(RecordedRequest request) {
+		if (!TRACE_KEYS_PATH.equals(request.getRequestUrl().encodedPath())) {
+			return new MockResponse().setResponseCode(404);
+		}
+		Failure failure = failures.poll();
+		if (failure == Failure.HTTP_ERROR) {
+			return new MockResponse().setResponseCode(500);
+		}
+
+		String lastKeyBundleTagParameter = request.getRequestUrl().queryParameter("lastKeyBundleTag");
+		long lastKeyBundleTag = lastKeyBundleTagParameter == null ? 0 : Long.parseLong(lastKeyBundleTagParameter);
+		long keyBundleTag = lastKeyBundleTag;
+		ArrayList<Proto.ProblematicEvent> events = new ArrayList<>();
+		synchronized (this) {
+			for (Map.Entry<Long, List<Proto.ProblematicEvent>> keyBundle : keyBundles.tailMap(lastKeyBundleTag, false)
+					.entrySet()) {
+				events.addAll(keyBundle.getValue());
+				keyBundleTag = keyBundle.getKey();
+			}
+		}
+
+		MockResponse response = new MockResponse()
+				.setHeader("Content-Type", "application/x-protobuf")
+				.setHeader(KEY_BUNDLE_TAG_HEADER, keyBundleTag)
+				.setBody(new Buffer().write(TraceKeyPayloadGenerator.toPayload(events)))
+				.setBodyDelay(bodyDelayMillis, TimeUnit.MILLISECONDS);
+		long bytesPerSecond = this.bytesPerSecond;
+		if (bytesPerSecond > 0) {
+			response.throttleBody(Math.max(1, bytesPerSecond * THROTTLE_PERIOD_MILLIS / 1000), THROTTLE_PERIOD_MILLIS,
+					TimeUnit.MILLISECONDS);
+		}
+		if (failure == Failure.DISCONNECT_DURING_BODY) {
+			response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+		}
+		return response;
+	}
+
+}
@@ -14,7 +14,6 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import java.nio.charset.StandardCharsets;
-import java.util.List;
 
 import com.google.android.gms.instantapps.InstantApps;
 import com.google.android.gms.instantapps.PackageManagerCompat;
@@ -36,6 +35,7 @@ import ch.ubique.notifyme.base.model.ReminderOption;
 import ch.ubique.notifyme.base.utils.ErrorState;
 import ch.ubique.notifyme.base.utils.FeatureUtil;
 import ch.ubique.notifyme.base.utils.Storage;
+import ch.ubique.notifyme.base.utils.StringUtils;
 
 import static ch.ubique.notifyme.app.utils.NotificationHelper.ACTION_CHECK_OUT_NOW;
 import static ch.ubique.notifyme.app.utils.NotificationHelper.ACTION_EXPOSURE_NOTIFICATION;
@@ -67,6 +67,7 @@ public class MainActivity extends AppCompatActivity {
 		setContentView(R.layout.activity_main);
 
 		storage = Storage.getInstance(this);
+		StringUtils.registerTimeChangeReceiver(this);
 
 		boolean onboardingCompleted = storage.getOnboardingCompleted();
 
@@ -76,6 +77,7 @@ public class MainActivity extends AppCompatActivity {
 			// If there is an url in the instant app cookies, mark the onboarding as complete and process the url
 			onboardingCompleted = true;
 			storage.setOnboardingCompleted(true);
+			storage.flush();
 
 			String url = new String(instantAppCookie, StandardCharsets.UTF_8);
 			checkValidCheckInIntent(url);
@@ -153,7 +155,7 @@ public class MainActivity extends AppCompatActivity {
 			showCheckOutScreen();
 		} else if (ACTION_EXPOSURE_NOTIFICATION.equals(intentAction)) {
 			long id = getIntent().getLongExtra(EXPOSURE_ID_EXTRA, -1);
-			ExposureEvent exposureEvent = getExposureWithId(id);
+			ExposureEvent exposureEvent = viewModel.getExposureWithId(id);
 			if (exposureEvent != null) {
 				showExposureScreen(exposureEvent);
 			}
@@ -171,16 +173,6 @@ public class MainActivity extends AppCompatActivity {
 		}
 	}
 
-	private ExposureEvent getExposureWithId(long id) {
-		List<ExposureEvent> exposureEvents = CrowdNotifier.getExposureEvents(this);
-		for (ExposureEvent exposureEvent : exposureEvents) {
-			if (exposureEvent.getId() == id) {
-				return exposureEvent;
-			}
-		}
-		return null;
-	}
-
 	private void showMainFragment() {
 		getSupportFragmentManager().beginTransaction()
 				.replace(R.id.container, MainFragment.newInstance())
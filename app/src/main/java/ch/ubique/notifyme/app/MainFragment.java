@@ -19,6 +19,7 @@ import java.util.concurrent.Executor;
 import org.crowdnotifier.android.sdk.model.ExposureEvent;
 
 import ch.ubique.notifyme.app.checkin.CheckedInFragment;
+import ch.ubique.notifyme.app.debug.MetricsFragment;
 import ch.ubique.notifyme.app.diary.DiaryFragment;
 import ch.ubique.notifyme.app.impressum.HtmlFragment;
 import ch.ubique.notifyme.app.qr.QrCodeScannerFragment;
@@ -35,6 +36,7 @@ public class MainFragment extends Fragment implements MainActivity.BackPressList
 	public final static String TAG = MainFragment.class.getCanonicalName();
 
 	private MainViewModel viewModel;
+	private boolean fullyDrawnReported = false;
 
 	public MainFragment() { super(R.layout.fragment_main); }
 
@@ -87,10 +89,15 @@ public class MainFragment extends Fragment implements MainActivity.BackPressList
 			}
 		});
 
-		viewModel.getTimeSinceCheckIn().observe(getViewLifecycleOwner(),
+		viewModel.getShortTimeSinceCheckIn().observe(getViewLifecycleOwner(),
 				duration -> checkOutButton.setText(StringUtils.getShortDurationString(duration)));
 
 		viewModel.getExposures().observe(getViewLifecycleOwner(), reports -> {
+			// The exposures are loaded asynchronously, the screen is complete once they are shown for the first time
+			if (reports != null && !fullyDrawnReported) {
+				fullyDrawnReported = true;
+				requireActivity().reportFullyDrawn();
+			}
 			if (reports == null || reports.isEmpty()) {
 				noReportsHeader.setVisibility(View.VISIBLE);
 				reportsHeader.setVisibility(View.GONE);
@@ -152,6 +159,12 @@ public class MainFragment extends Fragment implements MainActivity.BackPressList
 		} else {
 			nonProductiveInfo.setVisibility(View.VISIBLE);
 		}
+		if (BuildConfig.FLAVOR.equals("dev")) {
+			nonProductiveInfo.setOnLongClickListener(v -> {
+				showMetrics();
+				return true;
+			});
+		}
 
 		view.findViewById(R.id.app_termination_more_info).setOnClickListener(v -> {
 			requireActivity().getSupportFragmentManager().beginTransaction()
@@ -220,6 +233,13 @@ public class MainFragment extends Fragment implements MainActivity.BackPressList
 				.commitAllowingStateLoss();
 	}
 
+	private void showMetrics() {
+		requireActivity().getSupportFragmentManager().beginTransaction()
+				.replace(R.id.container, MetricsFragment.newInstance())
+				.addToBackStack(MainFragment.TAG)
+				.commit();
+	}
+
 	private void showImpressum() {
 		requireActivity().getSupportFragmentManager().beginTransaction()
 				.setCustomAnimations(ch.ubique.notifyme.base.R.anim.modal_slide_enter,
@@ -5,8 +5,6 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.os.Handler;
-import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationManagerCompat;
 import androidx.lifecycle.AndroidViewModel;
@@ -15,12 +13,20 @@ import androidx.lifecycle.MutableLiveData;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.crowdnotifier.android.sdk.CrowdNotifier;
 import org.crowdnotifier.android.sdk.model.ExposureEvent;
 
+import ch.ubique.notifyme.app.checkin.CheckInTimerLiveData;
+import ch.ubique.notifyme.app.model.ConfigResponseModel;
 import ch.ubique.notifyme.app.network.ConfigServiceController;
+import ch.ubique.notifyme.app.network.TraceKeyMatchingPipeline;
 import ch.ubique.notifyme.app.network.TraceKeysServiceController;
 import ch.ubique.notifyme.base.model.CheckInState;
 import ch.ubique.notifyme.base.model.ReminderOption;
@@ -34,7 +40,8 @@ public class MainViewModel extends AndroidViewModel {
 
 
 	private final MutableLiveData<List<ExposureEvent>> exposures = new MutableLiveData<>();
-	private final MutableLiveData<Long> timeSinceCheckIn = new MutableLiveData<>(0L);
+	private final CheckInTimerLiveData timeSinceCheckIn = new CheckInTimerLiveData(this::getCheckInTime, false);
+	private final CheckInTimerLiveData shortTimeSinceCheckIn = new CheckInTimerLiveData(this::getCheckInTime, true);
 	private final MutableLiveData<LoadingState> traceKeyLoadingState = new MutableLiveData<>(LoadingState.SUCCESS);
 	private final MutableLiveData<ErrorState> errorState = new MutableLiveData<>(null);
 	private final MutableLiveData<Boolean> forceUpdate = new MutableLiveData<>(false);
@@ -42,11 +49,18 @@ public class MainViewModel extends AndroidViewModel {
 	private CheckInState checkInState;
 
 	private Storage storage;
-	private final Handler handler = new Handler(Looper.getMainLooper());
-	private Runnable timeUpdateRunnable;
-	private final long CHECK_IN_TIME_UPDATE_INTERVAL = 1000;
-	private TraceKeysServiceController traceKeysServiceController = new TraceKeysServiceController(getApplication());
-	private ConfigServiceController configServiceController = new ConfigServiceController(getApplication());
+	/**
+	 * The service controllers are only used on the background executor, so their Retrofit stacks are built there on first
+	 * use instead of on the main thread during startup
+	 */
+	private volatile TraceKeysServiceController traceKeysServiceController;
+	private ConfigServiceController configServiceController;
+	/**
+	 * Runs trace key matching and exposure loading in order, results are published with postValue
+	 */
+	private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+	private Future<?> traceKeyRefresh;
+	private volatile ExposureIndex exposureIndex;
 
 	private BroadcastReceiver broadcastReceiver = new BroadcastReceiver() {
 		@Override
@@ -72,19 +86,12 @@ public class MainViewModel extends AndroidViewModel {
 	}
 
 
+	/**
+	 * Updates the check-in timers right away, they keep ticking on their own while they are observed
+	 */
 	public void startCheckInTimer() {
-		handler.removeCallbacks(timeUpdateRunnable);
-		timeUpdateRunnable = () -> {
-			if (checkInState != null) {
-				timeSinceCheckIn.setValue(System.currentTimeMillis() - checkInState.getCheckInTime());
-			} else {
-				timeSinceCheckIn.setValue(0L);
-			}
-			handler.postDelayed(timeUpdateRunnable, CHECK_IN_TIME_UPDATE_INTERVAL);
-		};
-		handler.postDelayed(timeUpdateRunnable, CHECK_IN_TIME_UPDATE_INTERVAL -
-				(System.currentTimeMillis() - checkInState.getCheckInTime() % CHECK_IN_TIME_UPDATE_INTERVAL));
-		timeSinceCheckIn.setValue(System.currentTimeMillis() - checkInState.getCheckInTime());
+		timeSinceCheckIn.restart();
+		shortTimeSinceCheckIn.restart();
 	}
 
 	public void setCheckInState(CheckInState checkInState) {
@@ -97,6 +104,10 @@ public class MainViewModel extends AndroidViewModel {
 		return checkInState;
 	}
 
+	private Long getCheckInTime() {
+		return checkInState != null ? checkInState.getCheckInTime() : null;
+	}
+
 	public void setCheckedIn(boolean checkedIn) {
 		if (checkInState != null) checkInState.setCheckedIn(checkedIn);
 		setCheckInState(checkInState);
@@ -110,6 +121,14 @@ public class MainViewModel extends AndroidViewModel {
 		return timeSinceCheckIn;
 	}
 
+	/**
+	 * Same as {@link #getTimeSinceCheckIn()}, but only updated every minute once the duration is displayed without seconds
+	 * by {@link ch.ubique.notifyme.base.utils.StringUtils#getShortDurationString(long)}
+	 */
+	public LiveData<Long> getShortTimeSinceCheckIn() {
+		return shortTimeSinceCheckIn;
+	}
+
 	public LiveData<LoadingState> getTraceKeyLoadingState() {
 		return traceKeyLoadingState;
 	}
@@ -127,14 +146,21 @@ public class MainViewModel extends AndroidViewModel {
 	}
 
 	public void refreshTraceKeys() {
+		if (traceKeyRefresh != null && !traceKeyRefresh.isDone()) return;
 		traceKeyLoadingState.setValue(LoadingState.LOADING);
-		traceKeysServiceController.loadTraceKeysAsync(traceKeys -> {
-			if (traceKeys == null) {
-				traceKeyLoadingState.setValue(LoadingState.FAILURE);
+		traceKeyRefresh = backgroundExecutor.submit(() -> {
+			TraceKeyMatchingPipeline pipeline = new TraceKeyMatchingPipeline(getApplication(),
+					TraceKeyMatchingPipeline.DEFAULT_CHUNK_SIZE, TraceKeyMatchingPipeline.DEFAULT_QUEUE_DEPTH);
+			if (traceKeysServiceController == null) {
+				traceKeysServiceController = new TraceKeysServiceController(getApplication());
+			}
+			TraceKeyMatchingPipeline.Result result = pipeline.run(traceKeysServiceController, newExposures -> { });
+			if (Thread.currentThread().isInterrupted()) return;
+			if (result == null) {
+				traceKeyLoadingState.postValue(LoadingState.FAILURE);
 			} else {
-				CrowdNotifier.checkForMatches(traceKeys, getApplication());
-				refreshExposures();
-				traceKeyLoadingState.setValue(LoadingState.SUCCESS);
+				publishExposures(loadExposures());
+				traceKeyLoadingState.postValue(LoadingState.SUCCESS);
 			}
 		});
 	}
@@ -161,25 +187,38 @@ public class MainViewModel extends AndroidViewModel {
 	}
 
 	public void refreshExposures() {
+		backgroundExecutor.execute(() -> publishExposures(loadExposures()));
+	}
+
+	private ExposureIndex loadExposures() {
 		List<ExposureEvent> newExposures = CrowdNotifier.getExposureEvents(getApplication());
 		Collections.sort(newExposures, (e1, e2) -> Long.compare(e2.getStartTime(), e1.getStartTime()));
-		exposures.setValue(newExposures);
+		return new ExposureIndex(newExposures);
+	}
+
+	private void publishExposures(ExposureIndex newExposureIndex) {
+		exposureIndex = newExposureIndex;
+		exposures.postValue(newExposureIndex.getExposures());
 	}
 
 	public void removeExposure(long exposureId) {
-		CrowdNotifier.removeExposure(getApplication(), exposureId);
-		refreshExposures();
+		backgroundExecutor.execute(() -> {
+			CrowdNotifier.removeExposure(getApplication(), exposureId);
+			publishExposures(loadExposures());
+		});
 	}
 
+	/**
+	 * Looks up an exposure in the last loaded exposures. If they have not been loaded yet, e.g. when the app is opened
+	 * from a notification, they are loaded synchronously. The synchronously loaded exposures are not stored, so they can
+	 * not overwrite newer exposures published by the background executor in the meantime.
+	 */
 	public ExposureEvent getExposureWithId(long id) {
-		List<ExposureEvent> exposureEvents = exposures.getValue();
-		if (exposureEvents == null) return null;
-		for (ExposureEvent exposureEvent : exposureEvents) {
-			if (exposureEvent.getId() == id) {
-				return exposureEvent;
-			}
+		ExposureIndex currentExposureIndex = exposureIndex;
+		if (currentExposureIndex == null) {
+			currentExposureIndex = loadExposures();
 		}
-		return null;
+		return currentExposureIndex.getExposureWithId(id);
 	}
 
 	public ReminderOption getSelectedReminderOption() {
@@ -192,10 +231,17 @@ public class MainViewModel extends AndroidViewModel {
 	}
 
 	public void reloadConfig() {
-		configServiceController.loadConfigAsync(configResponseModel -> {
-			if (configResponseModel != null) {
-				this.forceUpdate.setValue(configResponseModel.isForceUpdate());
+		backgroundExecutor.execute(() -> {
+			if (configServiceController == null) {
+				configServiceController = new ConfigServiceController(getApplication());
+				ConfigResponseModel cachedConfig = configServiceController.getCachedConfig();
+				if (cachedConfig != null) forceUpdate.postValue(cachedConfig.isForceUpdate());
 			}
+			configServiceController.loadConfigAsync(configResponseModel -> {
+				if (configResponseModel != null) {
+					this.forceUpdate.setValue(configResponseModel.isForceUpdate());
+				}
+			});
 		});
 	}
 
@@ -203,6 +249,36 @@ public class MainViewModel extends AndroidViewModel {
 	public void onCleared() {
 		super.onCleared();
 		LocalBroadcastManager.getInstance(getApplication()).unregisterReceiver(broadcastReceiver);
+		if (traceKeyRefresh != null) traceKeyRefresh.cancel(true);
+		if (traceKeysServiceController != null) traceKeysServiceController.cancel();
+		backgroundExecutor.shutdownNow();
+	}
+
+	/**
+	 * Immutable exposure list together with an index by id, published as one reference so both always match
+	 */
+	private static class ExposureIndex {
+
+		private final List<ExposureEvent> exposures;
+		private final Map<Long, ExposureEvent> exposuresById;
+
+		private ExposureIndex(List<ExposureEvent> exposures) {
+			this.exposures = Collections.unmodifiableList(exposures);
+			HashMap<Long, ExposureEvent> exposuresById = new HashMap<>();
+			for (ExposureEvent exposureEvent : exposures) {
+				exposuresById.put(exposureEvent.getId(), exposureEvent);
+			}
+			this.exposuresById = exposuresById;
+		}
+
+		private List<ExposureEvent> getExposures() {
+			return exposures;
+		}
+
+		private ExposureEvent getExposureWithId(long id) {
+			return exposuresById.get(id);
+		}
+
 	}
 
 	public enum LoadingState {
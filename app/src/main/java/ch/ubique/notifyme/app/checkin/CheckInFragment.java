@@ -76,9 +76,9 @@ public class CheckInFragment extends Fragment {
 
 		checkInButton.setOnClickListener(v -> {
 			long checkInTime = System.currentTimeMillis();
-			viewModel.startCheckInTimer();
 			viewModel.setCheckedIn(true);
 			viewModel.getCheckInState().setCheckInTime(checkInTime);
+			viewModel.startCheckInTimer();
 			NotificationHelper.getInstance(getContext()).startOngoingNotification(checkInTime, venueInfo);
 			ReminderHelper.set8HourReminder(checkInTime, getContext());
 			ReminderHelper.setAutoCheckOut(checkInTime, getContext());
@@ -0,0 +1,75 @@
+package ch.ubique.notifyme.app.checkin;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.lifecycle.LiveData;
+
+import ch.ubique.notifyme.base.utils.StringUtils;
+
+/**
+ * Time since check-in in milliseconds, updated only while there are active observers. Updates are scheduled for the
+ * moment the displayed duration changes, i.e. at full seconds since check-in, or at full minutes once the short duration
+ * format no longer shows seconds if the timer is created for it.
+ */
+public class CheckInTimerLiveData extends LiveData<Long> {
+
+	private static final long SECOND = 1000;
+	private static final long MINUTE = 60 * SECOND;
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final CheckInTimeProvider checkInTimeProvider;
+	private final boolean shortDurationFormat;
+	private final Runnable tickRunnable = this::tick;
+
+	/**
+	 * @param shortDurationFormat whether the value is displayed with {@link StringUtils#getShortDurationString(long)}
+	 */
+	public CheckInTimerLiveData(CheckInTimeProvider checkInTimeProvider, boolean shortDurationFormat) {
+		super(0L);
+		this.checkInTimeProvider = checkInTimeProvider;
+		this.shortDurationFormat = shortDurationFormat;
+	}
+
+	/**
+	 * Updates the value right away, call this when the check-in time has changed
+	 */
+	public void restart() {
+		handler.removeCallbacks(tickRunnable);
+		tick();
+	}
+
+	@Override
+	protected void onActive() {
+		restart();
+	}
+
+	@Override
+	protected void onInactive() {
+		handler.removeCallbacks(tickRunnable);
+	}
+
+	private void tick() {
+		Long checkInTime = checkInTimeProvider.getCheckInTime();
+		if (checkInTime == null) {
+			setValue(0L);
+			return;
+		}
+		long timeSinceCheckIn = System.currentTimeMillis() - checkInTime;
+		setValue(timeSinceCheckIn);
+		if (!hasActiveObservers()) return;
+
+		long interval =
+				shortDurationFormat && timeSinceCheckIn >= StringUtils.SHORT_DURATION_WITHOUT_SECONDS ? MINUTE : SECOND;
+		long sinceLastChange = ((timeSinceCheckIn % interval) + interval) % interval;
+		handler.postDelayed(tickRunnable, interval - sinceLastChange);
+	}
+
+	public interface CheckInTimeProvider {
+		/**
+		 * @return the current check-in time, or null if not checked in
+		 */
+		Long getCheckInTime();
+
+	}
+
+}
@@ -25,6 +25,7 @@ import ch.ubique.notifyme.app.utils.DiaryStorage;
 import ch.ubique.notifyme.app.utils.NotificationHelper;
 import ch.ubique.notifyme.app.utils.ReminderHelper;
 import ch.ubique.notifyme.base.model.CheckInState;
+import ch.ubique.notifyme.base.utils.Storage;
 import ch.ubique.notifyme.base.utils.StringUtils;
 import ch.ubique.notifyme.base.utils.VenueInfoExtensions;
 
@@ -154,6 +155,9 @@ public class CheckOutFragment extends Fragment {
 		long id = CrowdNotifier.addCheckIn(checkIn, checkOut, venueInfo, getContext());
 		DiaryStorage.getInstance(getContext()).addEntry(new DiaryEntry(id, checkIn, checkOut, venueInfo, comment));
 		viewModel.setCheckInState(null);
+		// The diary entry and the end of the check-in must not be lost if the process is killed right after the check-out
+		DiaryStorage.getInstance(getContext()).flush();
+		Storage.getInstance(getContext()).flush();
 	}
 
 	private void showStartScreen() {
@@ -0,0 +1,63 @@
+package ch.ubique.notifyme.app.debug;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import ch.ubique.notifyme.app.R;
+import ch.ubique.notifyme.base.utils.Metrics;
+
+/**
+ * Shows the collected {@link Metrics}, only reachable in the dev flavor. A long click on the text resets all values.
+ */
+public class MetricsFragment extends Fragment {
+
+	private static final long UPDATE_INTERVAL = 1000;
+
+	private TextView metricsText;
+	private final Runnable updateRunnable = new Runnable() {
+		@Override
+		public void run() {
+			metricsText.setText(Metrics.getSummary());
+			metricsText.postDelayed(this, UPDATE_INTERVAL);
+		}
+	};
+
+	public static MetricsFragment newInstance() {
+		return new MetricsFragment();
+	}
+
+	public MetricsFragment() {
+		super(R.layout.fragment_metrics);
+	}
+
+	@Override
+	public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+		super.onViewCreated(view, savedInstanceState);
+
+		metricsText = view.findViewById(R.id.metrics_fragment_text);
+		view.findViewById(R.id.metrics_fragment_close_button)
+				.setOnClickListener(v -> getActivity().getSupportFragmentManager().popBackStack());
+		metricsText.setOnLongClickListener(v -> {
+			Metrics.reset();
+			metricsText.setText(Metrics.getSummary());
+			return true;
+		});
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+		updateRunnable.run();
+	}
+
+	@Override
+	public void onPause() {
+		super.onPause();
+		metricsText.removeCallbacks(updateRunnable);
+	}
+
+}
@@ -11,21 +11,13 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 import org.crowdnotifier.android.sdk.model.ExposureEvent;
 
 import ch.ubique.notifyme.app.MainViewModel;
 import ch.ubique.notifyme.app.R;
 import ch.ubique.notifyme.app.model.DiaryEntry;
 import ch.ubique.notifyme.app.reports.ExposureFragment;
-import ch.ubique.notifyme.app.reports.items.ItemVenueVisit;
-import ch.ubique.notifyme.app.reports.items.ItemVenueVisitDayHeader;
-import ch.ubique.notifyme.app.reports.items.VenueVisitRecyclerItem;
-import ch.ubique.notifyme.app.utils.DiaryStorage;
-import ch.ubique.notifyme.base.utils.StringUtils;
+import ch.ubique.notifyme.app.reports.items.VenueVisitListPresenter;
 
 public class DiaryFragment extends Fragment {
 
@@ -35,6 +27,7 @@ public class DiaryFragment extends Fragment {
 	private Toolbar toolbar;
 	private ViewGroup emptyView;
 	private DiaryRecyclerAdapter recyclerAdapter = new DiaryRecyclerAdapter();
+	private VenueVisitListPresenter presenter;
 
 	public DiaryFragment() { super(R.layout.fragment_diary); }
 
@@ -58,37 +51,19 @@ public class DiaryFragment extends Fragment {
 		recyclerView.setAdapter(recyclerAdapter);
 		recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
 
-		viewModel.getExposures().observe(getViewLifecycleOwner(), exposures -> {
-			ArrayList<VenueVisitRecyclerItem> items = new ArrayList<>();
-
-			List<DiaryEntry> diaryEntries = DiaryStorage.getInstance(getContext()).getEntries();
-			Collections.sort(diaryEntries, (d1, d2) -> Long.compare(d2.getArrivalTime(), d1.getArrivalTime()));
-
-			boolean isEmpty = diaryEntries == null || diaryEntries.isEmpty();
-			emptyView.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
-
-			String daysAgoString = "";
-			for (DiaryEntry diaryEntry : diaryEntries) {
-				String newDaysAgoString = StringUtils.getDaysAgoString(diaryEntry.getArrivalTime(), getContext());
-				if (!newDaysAgoString.equals(daysAgoString)) {
-					daysAgoString = newDaysAgoString;
-					items.add(new ItemVenueVisitDayHeader(daysAgoString));
-				}
-				items.add(new ItemVenueVisit(getExposureWithId(exposures, diaryEntry.getId()), diaryEntry,
-						v -> onDiaryEntryClicked(diaryEntry, getExposureWithId(exposures, diaryEntry.getId()))));
-			}
-
-			recyclerAdapter.setData(items);
-		});
+		presenter = new VenueVisitListPresenter(requireContext());
+		viewModel.getExposures().observe(getViewLifecycleOwner(), exposures ->
+				presenter.buildDiaryItems(exposures, (exposureEvent, diaryEntry) -> onDiaryEntryClicked(diaryEntry, exposureEvent),
+						items -> {
+							emptyView.setVisibility(items.isEmpty() ? View.VISIBLE : View.GONE);
+							recyclerAdapter.setData(items);
+						}));
 	}
 
-	private ExposureEvent getExposureWithId(List<ExposureEvent> exposures, long id) {
-		for (ExposureEvent exposure : exposures) {
-			if (exposure.getId() == id) {
-				return exposure;
-			}
-		}
-		return null;
+	@Override
+	public void onDestroyView() {
+		super.onDestroyView();
+		presenter.cancel();
 	}
 
 	private void onDiaryEntryClicked(DiaryEntry diaryEntry, ExposureEvent exposureEvent) {
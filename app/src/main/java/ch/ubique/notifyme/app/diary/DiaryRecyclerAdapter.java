@@ -7,26 +7,33 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import org.crowdnotifier.android.sdk.model.VenueInfo;
-
 import ch.ubique.notifyme.app.R;
 import ch.ubique.notifyme.app.reports.items.ItemVenueVisit;
 import ch.ubique.notifyme.app.reports.items.ItemVenueVisitDayHeader;
 import ch.ubique.notifyme.app.reports.items.VenueVisitRecyclerItem;
-import ch.ubique.notifyme.base.utils.StringUtils;
-import ch.ubique.notifyme.base.utils.VenueInfoExtensions;
 
 public class DiaryRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-	List<VenueVisitRecyclerItem> items = new ArrayList<>();
+	private final AsyncListDiffer<VenueVisitRecyclerItem> differ =
+			new AsyncListDiffer<>(this, VenueVisitRecyclerItem.DIFF_CALLBACK);
+
+	public DiaryRecyclerAdapter() {
+		setHasStableIds(true);
+	}
 
 	@Override
-	public int getItemViewType(int position) { return items.get(position).getViewType().getId(); }
+	public int getItemViewType(int position) { return differ.getCurrentList().get(position).getViewType().getId(); }
+
+	@Override
+	public long getItemId(int position) {
+		return differ.getCurrentList().get(position).getStableId();
+	}
 
 	@NonNull
 	@Override
@@ -47,7 +54,7 @@ public class DiaryRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.View
 
 	@Override
 	public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-		VenueVisitRecyclerItem item = items.get(position);
+		VenueVisitRecyclerItem item = differ.getCurrentList().get(position);
 
 		switch (item.getViewType()) {
 			case REPORTS_DAY_HEADER:
@@ -61,13 +68,14 @@ public class DiaryRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.View
 
 	@Override
 	public int getItemCount() {
-		return items.size();
+		return differ.getCurrentList().size();
 	}
 
+	/**
+	 * Diffs the items against the current ones on a background thread and only updates the rows that changed
+	 */
 	public void setData(List<VenueVisitRecyclerItem> items) {
-		this.items.clear();
-		this.items.addAll(items);
-		notifyDataSetChanged();
+		differ.submitList(new ArrayList<>(items));
 	}
 
 
@@ -109,13 +117,9 @@ public class DiaryRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.View
 		}
 
 		public void bind(ItemVenueVisit item) {
-
-			VenueInfo venueInfo = item.getDiaryEntry().getVenueInfo();
-			nameTextView.setText(venueInfo.getTitle());
-			locationTextView.setText(VenueInfoExtensions.getSubtitle(venueInfo));
-			String start = StringUtils.getHourMinuteTimeString(item.getDiaryEntry().getArrivalTime(), ":");
-			String end = StringUtils.getHourMinuteTimeString(item.getDiaryEntry().getDepartureTime(), ":");
-			timeTextView.setText(start + " — " + end);
+			nameTextView.setText(item.getTitle());
+			locationTextView.setText(item.getSubtitle());
+			timeTextView.setText(item.getTimeString());
 			if (item.getExposure() == null) {
 				infoBox.setVisibility(View.GONE);
 				statusIcon.setImageDrawable(ContextCompat.getDrawable(itemView.getContext(), ch.ubique.notifyme.base.R.drawable.ic_check_filled));
@@ -128,7 +132,7 @@ public class DiaryRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.View
 				}
 				statusIcon.setImageDrawable(ContextCompat.getDrawable(itemView.getContext(), ch.ubique.notifyme.base.R.drawable.ic_info));
 			}
-			venueTypeIcon.setImageResource(VenueInfoExtensions.getVenueTypeDrawable(venueInfo));
+			venueTypeIcon.setImageResource(item.getVenueTypeDrawable());
 			itemView.setOnClickListener(item.getOnClickListener());
 		}
 
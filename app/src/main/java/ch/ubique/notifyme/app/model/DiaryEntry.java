@@ -17,6 +17,10 @@ public class DiaryEntry {
 		this.comment = comment;
 	}
 
+	public DiaryEntry copy() {
+		return new DiaryEntry(id, arrivalTime, departureTime, venueInfo, comment);
+	}
+
 	public long getId() {
 		return id;
 	}
@@ -0,0 +1,34 @@
+package ch.ubique.notifyme.app.model;
+
+/**
+ * Entry of the diary index, which holds the id and time window of every stored DiaryEntry so that lookups, ordering and
+ * retention can be done without decrypting the entries themselves
+ */
+public class DiaryIndexEntry {
+	private long id;
+	private long arrivalTime;
+	private long departureTime;
+
+	public DiaryIndexEntry(long id, long arrivalTime, long departureTime) {
+		this.id = id;
+		this.arrivalTime = arrivalTime;
+		this.departureTime = departureTime;
+	}
+
+	public static DiaryIndexEntry fromDiaryEntry(DiaryEntry diaryEntry) {
+		return new DiaryIndexEntry(diaryEntry.getId(), diaryEntry.getArrivalTime(), diaryEntry.getDepartureTime());
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public long getArrivalTime() {
+		return arrivalTime;
+	}
+
+	public long getDepartureTime() {
+		return departureTime;
+	}
+
+}
@@ -1,11 +1,17 @@
 package ch.ubique.notifyme.app.network;
 
 import android.content.Context;
-import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 import ch.ubique.notifyme.app.model.ConfigResponseModel;
 import ch.ubique.notifyme.base.BuildConfig;
-import okhttp3.OkHttpClient;
+import ch.ubique.notifyme.base.utils.Storage;
 import retrofit2.Call;
 import retrofit2.Response;
 import retrofit2.Retrofit;
@@ -13,31 +19,71 @@ import retrofit2.converter.gson.GsonConverterFactory;
 
 public class ConfigServiceController {
 
+	private static final long MIN_REFRESH_INTERVAL = TimeUnit.HOURS.toMillis(1);
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final String NO_CACHE = "no-cache";
+
 	private ConfigService configService;
+	private Storage storage;
+	private final Gson gson = new Gson();
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
 	public ConfigServiceController(Context context) {
 
+		storage = Storage.getInstance(context);
 		String baseUrl = BuildConfig.CONFIG_BASE_URL;
 
-		String userAgent = BuildConfig.APPLICATION_ID + ";" + BuildConfig.VERSION_NAME + ";Android;" + Build.VERSION.RELEASE;
-		OkHttpClient.Builder okHttpBuilder = new OkHttpClient.Builder();
-		okHttpBuilder.networkInterceptors().add(new UserAgentInterceptor(userAgent));
-
 		Retrofit bucketRetrofit = new Retrofit.Builder()
 				.baseUrl(baseUrl)
-				.client(okHttpBuilder.build())
-				.addConverterFactory(GsonConverterFactory.create())
+				.client(NetworkClient.getInstance(context).getOkHttpClient())
+				.addConverterFactory(GsonConverterFactory.create(gson))
 				.build();
 
 		configService = bucketRetrofit.create(ConfigService.class);
 	}
 
+	/**
+	 * @return the config of the last successful load, or null if it has never been loaded by the installed app version
+	 */
+	public ConfigResponseModel getCachedConfig() {
+		if (!isCachedConfigOfCurrentVersion()) return null;
+		String configJson = storage.getConfig();
+		if (configJson == null) return null;
+		try {
+			return gson.fromJson(configJson, ConfigResponseModel.class);
+		} catch (JsonParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Revalidates the cached config with a conditional request. Nothing is loaded if the config has been loaded by the
+	 * installed app version less than {@link #MIN_REFRESH_INTERVAL} ago, in that case the callback gets the cached config.
+	 * The callback is always called on the main thread.
+	 */
 	public void loadConfigAsync(Callback callback) {
-		configService.getConfig().enqueue(new retrofit2.Callback<ConfigResponseModel>() {
+		boolean cacheValid = isCachedConfigOfCurrentVersion() && storage.getConfig() != null;
+		if (cacheValid && System.currentTimeMillis() - storage.getConfigLastLoadTime() < MIN_REFRESH_INTERVAL) {
+			ConfigResponseModel cachedConfig = getCachedConfig();
+			mainHandler.post(() -> callback.onConfigLoaded(cachedConfig));
+			return;
+		}
+		// The server decides on a force update by the app version in the user agent, so the config of another version must
+		// not be revalidated, neither by this request nor by the HTTP cache
+		Call<ConfigResponseModel> call = cacheValid ?
+				configService.getConfig(storage.getConfigEtag(), storage.getConfigLastModified(), null) :
+				configService.getConfig(null, null, NO_CACHE);
+		call.enqueue(new retrofit2.Callback<ConfigResponseModel>() {
 			@Override
 			public void onResponse(Call<ConfigResponseModel> call, Response<ConfigResponseModel> response) {
-				if (response.isSuccessful()) {
+				if (response.isSuccessful() && response.body() != null) {
+					storage.setConfig(gson.toJson(response.body()), response.headers().get("ETag"),
+							response.headers().get("Last-Modified"), BuildConfig.VERSION_CODE);
+					storage.setConfigLastLoadTime(System.currentTimeMillis());
 					callback.onConfigLoaded(response.body());
+				} else if (response.code() == HTTP_NOT_MODIFIED) {
+					storage.setConfigLastLoadTime(System.currentTimeMillis());
+					callback.onConfigLoaded(getCachedConfig());
 				} else {
 					callback.onConfigLoaded(null);
 				}
@@ -50,6 +96,10 @@ public class ConfigServiceController {
 		});
 	}
 
+	private boolean isCachedConfigOfCurrentVersion() {
+		return storage.getConfigAppVersion() == BuildConfig.VERSION_CODE;
+	}
+
 	public interface Callback {
 		void onConfigLoaded(ConfigResponseModel config);
 
@@ -12,7 +12,6 @@ import java.util.concurrent.TimeUnit;
 
 import org.crowdnotifier.android.sdk.CrowdNotifier;
 import org.crowdnotifier.android.sdk.model.ExposureEvent;
-import org.crowdnotifier.android.sdk.model.ProblematicEventInfo;
 
 import ch.ubique.notifyme.app.utils.DiaryStorage;
 import ch.ubique.notifyme.app.utils.NotificationHelper;
@@ -24,8 +23,10 @@ import static ch.ubique.notifyme.app.utils.ReminderHelper.autoCheckoutIfNecessar
 public class KeyLoadWorker extends Worker {
 
 	public static final String ACTION_NEW_EXPOSURE_NOTIFICATION = BuildConfig.APPLICATION_ID + ".ACTION_NEW_EXPOSURE_NOTIFICATION";
+	public static final String KEY_CHUNK_SIZE = "KEY_CHUNK_SIZE";
+	public static final String KEY_QUEUE_DEPTH = "KEY_QUEUE_DEPTH";
 	private static final String WORK_TAG = "ch.ubique.notifyme.app.network.KeyLoadWorker";
-	private static final int DAYS_TO_KEEP_VENUE_VISITS = 14;
+	static final int DAYS_TO_KEEP_VENUE_VISITS = 14;
 	private static final int REPEAT_INTERVAL_MINUTES = 120;
 	private static final String LOG_TAG = "KeyLoadWorker";
 
@@ -45,33 +46,51 @@ public class KeyLoadWorker extends Worker {
 	}
 
 
+	private final TraceKeysServiceController traceKeysServiceController;
+
 	public KeyLoadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
 		super(context, workerParams);
+		traceKeysServiceController = new TraceKeysServiceController(context);
 	}
 
 	@NonNull
 	@Override
 	public Result doWork() {
 		Log.d(LOG_TAG, "Started KeyLoadWorker");
-		List<ProblematicEventInfo> problematicEventInfos = new TraceKeysServiceController(getApplicationContext()).loadTraceKeys();
-		if (problematicEventInfos == null) {
+		TraceKeyMatchingPipeline pipeline = new TraceKeyMatchingPipeline(getApplicationContext(),
+				getInputData().getInt(KEY_CHUNK_SIZE, TraceKeyMatchingPipeline.DEFAULT_CHUNK_SIZE),
+				getInputData().getInt(KEY_QUEUE_DEPTH, TraceKeyMatchingPipeline.DEFAULT_QUEUE_DEPTH));
+		TraceKeyMatchingPipeline.Result result =
+				pipeline.run(traceKeysServiceController, this::onExposuresFound);
+		if (result == null) {
 			Log.d(LOG_TAG, "KeyLoadWorker failure");
+			// Persists how far a partial download got, see TraceKeyMatchingPipeline#run
+			Storage.getInstance(getApplicationContext()).flush();
 			return Result.retry();
 		}
-		List<ExposureEvent> exposures = CrowdNotifier.checkForMatches(problematicEventInfos, getApplicationContext());
-		if (!exposures.isEmpty()) {
-			for (ExposureEvent exposureEvent : exposures) {
-				NotificationHelper.getInstance(getApplicationContext()).showExposureNotification(exposureEvent.getId());
-			}
-			LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(new Intent(ACTION_NEW_EXPOSURE_NOTIFICATION));
-		}
+		Log.d(LOG_TAG, "Matched trace keys: " + result);
 		cleanUpOldData(getApplicationContext());
 		autoCheckoutIfNecessary(getApplicationContext(), Storage.getInstance(getApplicationContext()).getCheckInState());
+		Storage.getInstance(getApplicationContext()).flush();
+		DiaryStorage.getInstance(getApplicationContext()).flush();
 
 		Log.d(LOG_TAG, "KeyLoadWorker success");
 		return Result.success();
 	}
 
+	@Override
+	public void onStopped() {
+		super.onStopped();
+		traceKeysServiceController.cancel();
+	}
+
+	private void onExposuresFound(List<ExposureEvent> exposures) {
+		for (ExposureEvent exposureEvent : exposures) {
+			NotificationHelper.getInstance(getApplicationContext()).showExposureNotification(exposureEvent.getId());
+		}
+		LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(new Intent(ACTION_NEW_EXPOSURE_NOTIFICATION));
+	}
+
 	public static void cleanUpOldData(Context context) {
 		CrowdNotifier.cleanUpOldData(context, DAYS_TO_KEEP_VENUE_VISITS);
 		DiaryStorage.getInstance(context).removeEntriesBefore(DAYS_TO_KEEP_VENUE_VISITS);
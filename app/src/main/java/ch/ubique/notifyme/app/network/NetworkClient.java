@@ -0,0 +1,51 @@
+package ch.ubique.notifyme.app.network;
+
+import android.content.Context;
+import android.os.Build;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import ch.ubique.notifyme.base.BuildConfig;
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+/**
+ * Process-wide OkHttpClient shared by all service controllers, so that the connection pool, TLS sessions and dispatcher
+ * threads are reused across requests. Responses are cached on disk according to their Cache-Control and ETag headers.
+ */
+public class NetworkClient {
+
+	private static final String CACHE_DIRECTORY = "http_cache";
+	private static final long CACHE_SIZE_BYTES = 10 * 1024 * 1024;
+	private static final long CONNECT_TIMEOUT_SECONDS = 15;
+	private static final long READ_TIMEOUT_SECONDS = 30;
+	private static final long WRITE_TIMEOUT_SECONDS = 15;
+
+	private static NetworkClient instance;
+
+	private final OkHttpClient okHttpClient;
+
+	private NetworkClient(Context context) {
+		String userAgent = BuildConfig.APPLICATION_ID + ";" + BuildConfig.VERSION_NAME + ";Android;" + Build.VERSION.RELEASE;
+		OkHttpClient.Builder okHttpBuilder = new OkHttpClient.Builder()
+				.cache(new Cache(new File(context.getCacheDir(), CACHE_DIRECTORY), CACHE_SIZE_BYTES))
+				.connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+				.readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+				.writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		okHttpBuilder.networkInterceptors().add(new UserAgentInterceptor(userAgent));
+		okHttpClient = okHttpBuilder.build();
+	}
+
+	public static synchronized NetworkClient getInstance(Context context) {
+		if (instance == null) {
+			instance = new NetworkClient(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	public OkHttpClient getOkHttpClient() {
+		return okHttpClient;
+	}
+
+}
@@ -0,0 +1,94 @@
+package ch.ubique.notifyme.app.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+import org.crowdnotifier.android.sdk.model.ProblematicEventInfo;
+
+import ch.ubique.notifyme.app.model.Proto;
+
+/**
+ * Decodes a serialized {@link Proto.ProblematicEventWrapper} from a stream one event at a time, without materializing the
+ * wrapper or intermediate ByteStrings. Every event is handed to the consumer as soon as it has been read, so the memory
+ * needed is bounded by the size of a single event.
+ */
+public class ProblematicEventDecoder {
+
+	private static final byte[] EMPTY_BYTES = new byte[0];
+
+	public static void decode(InputStream inputStream, Consumer consumer) throws IOException {
+		CodedInputStream input = CodedInputStream.newInstance(inputStream);
+		// The default limit of 64MB is meant for whole messages, events are read one by one
+		input.setSizeLimit(Integer.MAX_VALUE);
+		while (true) {
+			int tag = input.readTag();
+			if (tag == 0) break;
+			if (WireFormat.getTagFieldNumber(tag) == Proto.ProblematicEventWrapper.EVENTS_FIELD_NUMBER &&
+					WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+				int length = input.readRawVarint32();
+				int oldLimit = input.pushLimit(length);
+				ProblematicEventInfo problematicEventInfo = readProblematicEvent(input);
+				// Reading stops early at an end group tag, the rest of the event must not be read as part of the wrapper
+				input.skipRawBytes(input.getBytesUntilLimit());
+				input.popLimit(oldLimit);
+				consumer.onProblematicEvent(problematicEventInfo);
+			} else if (!input.skipField(tag)) {
+				break;
+			}
+		}
+	}
+
+	private static ProblematicEventInfo readProblematicEvent(CodedInputStream input) throws IOException {
+		byte[] identity = EMPTY_BYTES;
+		byte[] secretKeyForIdentity = EMPTY_BYTES;
+		long startTime = 0;
+		long endTime = 0;
+		byte[] encryptedAssociatedData = EMPTY_BYTES;
+		byte[] cipherTextNonce = EMPTY_BYTES;
+
+		while (true) {
+			int tag = input.readTag();
+			if (tag == 0) break;
+			int wireType = WireFormat.getTagWireType(tag);
+			switch (WireFormat.getTagFieldNumber(tag)) {
+				case Proto.ProblematicEvent.IDENTITY_FIELD_NUMBER:
+					if (wireType != WireFormat.WIRETYPE_LENGTH_DELIMITED) break;
+					identity = input.readByteArray();
+					continue;
+				case Proto.ProblematicEvent.SECRETKEYFORIDENTITY_FIELD_NUMBER:
+					if (wireType != WireFormat.WIRETYPE_LENGTH_DELIMITED) break;
+					secretKeyForIdentity = input.readByteArray();
+					continue;
+				case Proto.ProblematicEvent.STARTTIME_FIELD_NUMBER:
+					if (wireType != WireFormat.WIRETYPE_VARINT) break;
+					startTime = input.readInt64();
+					continue;
+				case Proto.ProblematicEvent.ENDTIME_FIELD_NUMBER:
+					if (wireType != WireFormat.WIRETYPE_VARINT) break;
+					endTime = input.readInt64();
+					continue;
+				case Proto.ProblematicEvent.ENCRYPTEDASSOCIATEDDATA_FIELD_NUMBER:
+					if (wireType != WireFormat.WIRETYPE_LENGTH_DELIMITED) break;
+					encryptedAssociatedData = input.readByteArray();
+					continue;
+				case Proto.ProblematicEvent.CIPHERTEXTNONCE_FIELD_NUMBER:
+					if (wireType != WireFormat.WIRETYPE_LENGTH_DELIMITED) break;
+					cipherTextNonce = input.readByteArray();
+					continue;
+			}
+			if (!input.skipField(tag)) break;
+		}
+
+		return new ProblematicEventInfo(identity, secretKeyForIdentity, startTime, endTime, encryptedAssociatedData,
+				cipherTextNonce);
+	}
+
+	public interface Consumer {
+		void onProblematicEvent(ProblematicEventInfo problematicEventInfo);
+
+	}
+
+}
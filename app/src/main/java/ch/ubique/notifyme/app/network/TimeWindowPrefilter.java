@@ -0,0 +1,127 @@
+package ch.ubique.notifyme.app.network;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.crowdnotifier.android.sdk.model.ProblematicEventInfo;
+
+import ch.ubique.notifyme.app.model.DiaryIndexEntry;
+import ch.ubique.notifyme.app.utils.DiaryStorage;
+
+/**
+ * Interval index over the time windows of the locally stored check-ins. Problematic events whose time window does not
+ * overlap any check-in can not match, so they are dropped before the expensive cryptographic matching.
+ */
+public class TimeWindowPrefilter {
+
+	/**
+	 * Check-ins are matched per hour, so the windows are padded generously to never drop a potential match
+	 */
+	static final long WINDOW_PADDING = TimeUnit.HOURS.toMillis(2);
+	/**
+	 * Check-ins older than this are deleted by the cleanup, see {@link KeyLoadWorker#cleanUpOldData(Context)}
+	 */
+	private static final long MAX_CHECK_IN_AGE = TimeUnit.DAYS.toMillis(KeyLoadWorker.DAYS_TO_KEEP_VENUE_VISITS + 1);
+	/**
+	 * Timestamps below this value (in 1973) are not milliseconds, such events are never dropped
+	 */
+	private static final long MIN_PLAUSIBLE_TIMESTAMP = 100_000_000_000L;
+
+	private final long[] starts;
+	private final long[] ends;
+	private final boolean enabled;
+	private int checkedCount = 0;
+	private int prunedCount = 0;
+
+	private TimeWindowPrefilter(long[] starts, long[] ends, boolean enabled) {
+		this.starts = starts;
+		this.ends = ends;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Builds the prefilter from the check-in windows known to the diary. If the diary can not guarantee to know the windows of
+	 * all check-ins stored in the SDK, i.e. if entries might have been hidden before their windows were tracked, the returned
+	 * prefilter lets every event pass.
+	 */
+	public static TimeWindowPrefilter create(Context context) {
+		DiaryStorage diaryStorage = DiaryStorage.getInstance(context);
+		boolean complete = diaryStorage.getCheckInWindowsTrackedSince() < System.currentTimeMillis() - MAX_CHECK_IN_AGE;
+		return create(diaryStorage.getCheckInWindows(), complete);
+	}
+
+	static TimeWindowPrefilter create(List<DiaryIndexEntry> checkInWindows, boolean enabled) {
+		long[][] windows = new long[checkInWindows.size()][];
+		for (int i = 0; i < windows.length; i++) {
+			DiaryIndexEntry checkInWindow = checkInWindows.get(i);
+			windows[i] = new long[] { checkInWindow.getArrivalTime() - WINDOW_PADDING,
+					checkInWindow.getDepartureTime() + WINDOW_PADDING };
+		}
+		Arrays.sort(windows, (w1, w2) -> Long.compare(w1[0], w2[0]));
+
+		// Merge overlapping windows, so that the index consists of disjoint intervals sorted by start and end
+		long[] starts = new long[windows.length];
+		long[] ends = new long[windows.length];
+		int count = 0;
+		for (long[] window : windows) {
+			if (count > 0 && window[0] <= ends[count - 1]) {
+				ends[count - 1] = Math.max(ends[count - 1], window[1]);
+			} else {
+				starts[count] = window[0];
+				ends[count] = window[1];
+				count++;
+			}
+		}
+		return new TimeWindowPrefilter(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count), enabled);
+	}
+
+	public boolean mightMatch(ProblematicEventInfo problematicEventInfo) {
+		checkedCount++;
+		if (!enabled || problematicEventInfo.getStartTimestamp() < MIN_PLAUSIBLE_TIMESTAMP) return true;
+		boolean overlaps = overlaps(problematicEventInfo.getStartTimestamp(), problematicEventInfo.getEndTimestamp());
+		if (!overlaps) prunedCount++;
+		return overlaps;
+	}
+
+	public List<ProblematicEventInfo> filter(List<ProblematicEventInfo> problematicEventInfos) {
+		ArrayList<ProblematicEventInfo> candidates = new ArrayList<>();
+		for (ProblematicEventInfo problematicEventInfo : problematicEventInfos) {
+			if (mightMatch(problematicEventInfo)) candidates.add(problematicEventInfo);
+		}
+		return candidates;
+	}
+
+	private boolean overlaps(long start, long end) {
+		// Find the last window starting before the end of the event
+		int low = 0;
+		int high = starts.length - 1;
+		int candidate = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= end) {
+				candidate = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return candidate >= 0 && ends[candidate] >= start;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getCheckedCount() {
+		return checkedCount;
+	}
+
+	public int getPrunedCount() {
+		return prunedCount;
+	}
+
+}
@@ -0,0 +1,54 @@
+package ch.ubique.notifyme.app.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from the wrapped stream and the time spent blocking in it
+ */
+class TimedInputStream extends FilterInputStream {
+
+	private long bytesRead = 0;
+	private long readTimeNanos = 0;
+
+	TimedInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		long start = System.nanoTime();
+		int value = super.read();
+		readTimeNanos += System.nanoTime() - start;
+		if (value != -1) bytesRead++;
+		return value;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		long start = System.nanoTime();
+		int count = super.read(b, off, len);
+		readTimeNanos += System.nanoTime() - start;
+		if (count > 0) bytesRead += count;
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long start = System.nanoTime();
+		long skipped = super.skip(n);
+		readTimeNanos += System.nanoTime() - start;
+		bytesRead += skipped;
+		return skipped;
+	}
+
+	long getBytesRead() {
+		return bytesRead;
+	}
+
+	long getReadTimeNanos() {
+		return readTimeNanos;
+	}
+
+}
@@ -0,0 +1,336 @@
+package ch.ubique.notifyme.app.network;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.crowdnotifier.android.sdk.CrowdNotifier;
+import org.crowdnotifier.android.sdk.model.ExposureEvent;
+import org.crowdnotifier.android.sdk.model.ProblematicEventInfo;
+
+import ch.ubique.notifyme.base.utils.Metrics;
+import ch.ubique.notifyme.base.utils.Storage;
+
+/**
+ * Downloads, decodes and matches trace keys concurrently. A producer thread reads the response and decodes it into chunks
+ * of events, which are passed through a bounded queue to the calling thread, where they are matched against the local
+ * check-ins. The CPU-bound matching therefore overlaps with the download, decoding and prefiltering, and exposures are
+ * reported per chunk as soon as they are found.
+ * <p>
+ * The SDK stores found exposures with a read-modify-write that is not synchronized, so it is only ever called from the
+ * matching thread. The periodic worker and the manual refresh each run their own pipeline, so runs are serialized across
+ * the process, which also keeps them from interleaving their updates of the key bundle tag and partial sync state.
+ */
+public class TraceKeyMatchingPipeline {
+
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+	public static final int DEFAULT_QUEUE_DEPTH = 4;
+
+	private static final long QUEUE_POLL_TIMEOUT_MILLIS = 100;
+	private static final long NO_KEY_BUNDLE_TAG = -1;
+	private static final Chunk END_OF_STREAM = new Chunk(Collections.emptyList(), 0);
+	private static final ReentrantLock runLock = new ReentrantLock();
+
+	private final Context context;
+	private final Storage storage;
+	private final int chunkSize;
+	private final int queueDepth;
+
+	public TraceKeyMatchingPipeline(Context context, int chunkSize, int queueDepth) {
+		this.context = context;
+		this.storage = Storage.getInstance(context);
+		this.chunkSize = Math.max(1, chunkSize);
+		this.queueDepth = Math.max(1, queueDepth);
+	}
+
+	/**
+	 * Runs the pipeline on the calling thread, which does the matching, while the download happens on a separate thread.
+	 * Waits until a run of another pipeline has finished. On success, the key bundle tag of the response is stored as the
+	 * last key bundle tag before the next run can start.
+	 * <p>
+	 * If the download fails, the events matched so far have already been reported and stored by the SDK. The number of
+	 * matched events is saved with the key bundle tag of the response, so the next run skips them if the server sends the
+	 * same response again, i.e. the same key bundle tag for the same last key bundle tag.
+	 * @return the result of the run, or null if the trace keys could not be loaded completely or the thread was interrupted
+	 */
+	public Result run(TraceKeysServiceController traceKeysServiceController, Listener listener) {
+		try {
+			runLock.lockInterruptibly();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		try {
+			Result result = runExclusively(traceKeysServiceController, listener);
+			if (result != null) storage.setLastKeyBundleTag(result.getKeyBundleTag());
+			return result;
+		} finally {
+			runLock.unlock();
+		}
+	}
+
+	private Result runExclusively(TraceKeysServiceController traceKeysServiceController, Listener listener) {
+		BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(queueDepth);
+		TimeWindowPrefilter prefilter = TimeWindowPrefilter.create(context);
+		Producer producer = new Producer(traceKeysServiceController, prefilter, queue);
+		Thread producerThread = new Thread(producer, "TraceKeyDownload");
+		long startTime = Metrics.beginSpan(Metrics.Span.TRACE_KEY_SYNC);
+		producerThread.start();
+
+		ArrayList<ExposureEvent> exposures = new ArrayList<>();
+		long matchingTimeNanos = 0;
+		int eventCount = 0;
+		int chunkCount = 0;
+		long matchedStreamPosition = 0;
+		long totalTimeNanos;
+		try {
+			while (true) {
+				Chunk chunk = queue.take();
+				if (chunk == END_OF_STREAM) break;
+				long matchingStart = Metrics.beginSpan(Metrics.Span.TRACE_KEY_MATCHING);
+				List<ExposureEvent> newExposures = CrowdNotifier.checkForMatches(chunk.events, context);
+				matchingTimeNanos += Metrics.endSpan(Metrics.Span.TRACE_KEY_MATCHING, matchingStart);
+				Metrics.add(Metrics.Counter.EVENTS_CHECKED, chunk.events.size());
+				matchedStreamPosition = chunk.streamPosition;
+				eventCount += chunk.events.size();
+				chunkCount++;
+				if (!newExposures.isEmpty()) {
+					exposures.addAll(newExposures);
+					listener.onExposuresFound(newExposures);
+				}
+			}
+			producerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			// The producer only notices the cancellation when it enqueues, so stop the download itself
+			traceKeysServiceController.cancel();
+			savePartialSync(producer, matchedStreamPosition);
+			return null;
+		} finally {
+			producer.cancelled = true;
+			totalTimeNanos = Metrics.endSpan(Metrics.Span.TRACE_KEY_SYNC, startTime);
+		}
+
+		TraceKeysServiceController.StreamingResult streamingResult = producer.streamingResult;
+		if (streamingResult == null) {
+			savePartialSync(producer, matchedStreamPosition);
+			return null;
+		}
+		Result result = new Result(streamingResult.getKeyBundleTag(), exposures, prefilter.getCheckedCount(), eventCount,
+				chunkCount, streamingResult.getBytesRead(), streamingResult.getNetworkTimeNanos(),
+				producer.decodeTimeNanos - streamingResult.getNetworkTimeNanos(), matchingTimeNanos, totalTimeNanos);
+		Metrics.record(Metrics.Span.TRACE_KEY_NETWORK, result.getNetworkTimeNanos());
+		Metrics.record(Metrics.Span.TRACE_KEY_DECODE, result.getDecodeTimeNanos());
+		Metrics.add(Metrics.Counter.DOWNLOADED_BYTES, result.getBytesRead());
+		Metrics.add(Metrics.Counter.DOWNLOADED_EVENTS, result.getDownloadedEventCount());
+		return result;
+	}
+
+	private void savePartialSync(Producer producer, long matchedStreamPosition) {
+		long keyBundleTag = producer.responseKeyBundleTag;
+		if (keyBundleTag == NO_KEY_BUNDLE_TAG || matchedStreamPosition == 0) return;
+		storage.setPartialSync(keyBundleTag, matchedStreamPosition);
+	}
+
+
+	/**
+	 * Events that passed the prefilter, streamPosition is the number of downloaded events up to the end of the chunk
+	 */
+	private static class Chunk {
+
+		private final List<ProblematicEventInfo> events;
+		private final long streamPosition;
+
+		private Chunk(List<ProblematicEventInfo> events, long streamPosition) {
+			this.events = events;
+			this.streamPosition = streamPosition;
+		}
+
+	}
+
+
+	private class Producer implements Runnable, TraceKeysServiceController.StreamConsumer {
+
+		private final TraceKeysServiceController traceKeysServiceController;
+		private final TimeWindowPrefilter prefilter;
+		private final BlockingQueue<Chunk> queue;
+		private volatile boolean cancelled = false;
+		private volatile TraceKeysServiceController.StreamingResult streamingResult;
+		private volatile long decodeTimeNanos = 0;
+		private volatile long responseKeyBundleTag = NO_KEY_BUNDLE_TAG;
+		private ArrayList<ProblematicEventInfo> currentChunk = new ArrayList<>(chunkSize);
+		private long streamPosition = 0;
+		private long eventsToSkip = 0;
+		private long queueWaitTimeNanos = 0;
+
+		private Producer(TraceKeysServiceController traceKeysServiceController, TimeWindowPrefilter prefilter,
+				BlockingQueue<Chunk> queue) {
+			this.traceKeysServiceController = traceKeysServiceController;
+			this.prefilter = prefilter;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			try {
+				TraceKeysServiceController.StreamingResult result = traceKeysServiceController.loadTraceKeys(this);
+				if (result != null && !currentChunk.isEmpty()) {
+					enqueue(new Chunk(currentChunk, streamPosition));
+				}
+				streamingResult = result;
+			} catch (CancellationException e) {
+				streamingResult = null;
+			} finally {
+				decodeTimeNanos = System.nanoTime() - start - queueWaitTimeNanos;
+				forceEnqueueEndOfStream();
+			}
+		}
+
+		@Override
+		public void onKeyBundleTag(long keyBundleTag) {
+			responseKeyBundleTag = keyBundleTag;
+			if (storage.getPartialSyncKeyBundleTag() == keyBundleTag) {
+				// These events were already matched by a previous run that downloaded the same response
+				eventsToSkip = storage.getPartialSyncMatchedEventCount();
+			}
+		}
+
+		@Override
+		public void onProblematicEvent(ProblematicEventInfo event) {
+			streamPosition++;
+			if (streamPosition <= eventsToSkip || !prefilter.mightMatch(event)) return;
+			currentChunk.add(event);
+			if (currentChunk.size() >= chunkSize) {
+				enqueue(new Chunk(currentChunk, streamPosition));
+				currentChunk = new ArrayList<>(chunkSize);
+			}
+		}
+
+		private void enqueue(Chunk chunk) {
+			long waitStart = System.nanoTime();
+			try {
+				while (!queue.offer(chunk, QUEUE_POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					if (cancelled) throw new CancellationException();
+				}
+			} catch (InterruptedException e) {
+				throw new CancellationException();
+			} finally {
+				queueWaitTimeNanos += System.nanoTime() - waitStart;
+			}
+		}
+
+		private void forceEnqueueEndOfStream() {
+			try {
+				while (!cancelled && !queue.offer(END_OF_STREAM, QUEUE_POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					// wait until the consumer has taken a chunk or was cancelled
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+
+	public static class Result {
+
+		private final long keyBundleTag;
+		private final List<ExposureEvent> exposures;
+		private final int downloadedEventCount;
+		private final int eventCount;
+		private final int chunkCount;
+		private final long bytesRead;
+		private final long networkTimeNanos;
+		private final long decodeTimeNanos;
+		private final long matchingTimeNanos;
+		private final long totalTimeNanos;
+
+		private Result(long keyBundleTag, List<ExposureEvent> exposures, int downloadedEventCount, int eventCount,
+				int chunkCount, long bytesRead,
+				long networkTimeNanos, long decodeTimeNanos, long matchingTimeNanos, long totalTimeNanos) {
+			this.keyBundleTag = keyBundleTag;
+			this.exposures = exposures;
+			this.downloadedEventCount = downloadedEventCount;
+			this.eventCount = eventCount;
+			this.chunkCount = chunkCount;
+			this.bytesRead = bytesRead;
+			this.networkTimeNanos = networkTimeNanos;
+			this.decodeTimeNanos = decodeTimeNanos;
+			this.matchingTimeNanos = matchingTimeNanos;
+			this.totalTimeNanos = totalTimeNanos;
+		}
+
+		public long getKeyBundleTag() {
+			return keyBundleTag;
+		}
+
+		public List<ExposureEvent> getExposures() {
+			return exposures;
+		}
+
+		public int getDownloadedEventCount() {
+			return downloadedEventCount;
+		}
+
+		/**
+		 * @return the number of events that passed the {@link TimeWindowPrefilter} and were matched
+		 */
+		public int getEventCount() {
+			return eventCount;
+		}
+
+		public int getPrunedEventCount() {
+			return downloadedEventCount - eventCount;
+		}
+
+		public int getChunkCount() {
+			return chunkCount;
+		}
+
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		public long getNetworkTimeNanos() {
+			return networkTimeNanos;
+		}
+
+		public long getDecodeTimeNanos() {
+			return decodeTimeNanos;
+		}
+
+		public long getMatchingTimeNanos() {
+			return matchingTimeNanos;
+		}
+
+		public long getTotalTimeNanos() {
+			return totalTimeNanos;
+		}
+
+		@Override
+		public String toString() {
+			return downloadedEventCount + " events (" + getPrunedEventCount() + " pruned), " + eventCount + " matched in " +
+					chunkCount + " chunks, " + bytesRead + " bytes" +
+					", network " + TimeUnit.NANOSECONDS.toMillis(networkTimeNanos) + "ms" +
+					", decode " + TimeUnit.NANOSECONDS.toMillis(decodeTimeNanos) + "ms" +
+					", matching " + TimeUnit.NANOSECONDS.toMillis(matchingTimeNanos) + "ms" +
+					", total " + TimeUnit.NANOSECONDS.toMillis(totalTimeNanos) + "ms";
+		}
+
+	}
+
+
+	public interface Listener {
+		void onExposuresFound(List<ExposureEvent> exposures);
+
+	}
+
+}
@@ -5,9 +5,11 @@ import retrofit2.Call;
 import retrofit2.http.GET;
 import retrofit2.http.Headers;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 public interface TraceKeysService {
 
+	@Streaming
 	@Headers("Accept: application/x-protobuf")
 	@GET("v3/traceKeys")
 	Call<ResponseBody> getTraceKeys(@Query("lastKeyBundleTag") long lastKeyBundleTag);
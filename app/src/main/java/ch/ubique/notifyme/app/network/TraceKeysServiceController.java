@@ -1,18 +1,11 @@
 package ch.ubique.notifyme.app.network;
 
 import android.content.Context;
-import android.os.Build;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
-import org.crowdnotifier.android.sdk.model.ProblematicEventInfo;
-
-import ch.ubique.notifyme.app.model.Proto;
 import ch.ubique.notifyme.base.BuildConfig;
 import ch.ubique.notifyme.base.utils.Storage;
-import okhttp3.OkHttpClient;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Response;
@@ -24,74 +17,113 @@ public class TraceKeysServiceController {
 
 	private TraceKeysService traceKeysService;
 	private Storage storage;
+	private volatile Call<ResponseBody> runningCall;
+	private volatile boolean cancelled = false;
 
 	public TraceKeysServiceController(Context context) {
+		this(context, BuildConfig.PUBLISHED_KEYS_BASE_URL);
+	}
 
-		storage = Storage.getInstance(context);
-		String baseUrl = BuildConfig.PUBLISHED_KEYS_BASE_URL;
+	/**
+	 * @param baseUrl the server serving v3/traceKeys, e.g. a local stand-in server to test the sync without the backend
+	 */
+	public TraceKeysServiceController(Context context, String baseUrl) {
 
-		String userAgent = BuildConfig.APPLICATION_ID + ";" + BuildConfig.VERSION_NAME + ";Android;" + Build.VERSION.RELEASE;
-		OkHttpClient.Builder okHttpBuilder = new OkHttpClient.Builder();
-		okHttpBuilder.networkInterceptors().add(new UserAgentInterceptor(userAgent));
+		storage = Storage.getInstance(context);
 
 		Retrofit bucketRetrofit = new Retrofit.Builder()
 				.baseUrl(baseUrl)
-				.client(okHttpBuilder.build())
+				.client(NetworkClient.getInstance(context).getOkHttpClient())
 				.build();
 
 		traceKeysService = bucketRetrofit.create(TraceKeysService.class);
 	}
 
-	public void loadTraceKeysAsync(Callback callback) {
-		traceKeysService.getTraceKeys(storage.getLastKeyBundleTag()).enqueue(new retrofit2.Callback<ResponseBody>() {
-			@Override
-			public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
-				if (response.isSuccessful()) {
-					callback.onTraceKeysLoaded(handleSuccessfulResponse(response));
-				} else {
-					callback.onTraceKeysLoaded(null);
-				}
-			}
-
-			@Override
-			public void onFailure(Call<ResponseBody> call, Throwable t) {
-				callback.onTraceKeysLoaded(null);
-			}
-		});
-	}
-
-	public List<ProblematicEventInfo> loadTraceKeys() {
+	/**
+	 * Synchronously loads the trace keys and hands every event to the consumer while the response is still being downloaded.
+	 * The last key bundle tag is not stored, the caller has to do so with {@link Storage#setLastKeyBundleTag(long)} once
+	 * all events have been processed, as {@link TraceKeyMatchingPipeline#run} does.
+	 * @return the result of the download, or null if the trace keys could not be loaded
+	 */
+	public StreamingResult loadTraceKeys(StreamConsumer consumer) {
+		Call<ResponseBody> call = traceKeysService.getTraceKeys(storage.getLastKeyBundleTag());
+		runningCall = call;
+		if (cancelled) call.cancel();
 		try {
-			Response<ResponseBody> response = traceKeysService.getTraceKeys(storage.getLastKeyBundleTag()).execute();
+			// Connecting and waiting for the headers is part of the network time, not only reading the body
+			long requestStart = System.nanoTime();
+			Response<ResponseBody> response = call.execute();
+			long requestTimeNanos = System.nanoTime() - requestStart;
 			if (response.isSuccessful()) {
-				return handleSuccessfulResponse(response);
+				return decodeResponse(response, requestTimeNanos, consumer);
 			}
+			if (response.errorBody() != null) response.errorBody().close();
 		} catch (IOException e) {
 			return null;
+		} finally {
+			runningCall = null;
 		}
 		return null;
 	}
 
-	private List<ProblematicEventInfo> handleSuccessfulResponse(Response<ResponseBody> response) {
-		try {
+	/**
+	 * Cancels the running download, which makes {@link #loadTraceKeys} return null, and every later one
+	 */
+	public void cancel() {
+		cancelled = true;
+		Call<ResponseBody> call = runningCall;
+		if (call != null) call.cancel();
+	}
+
+	private StreamingResult decodeResponse(Response<ResponseBody> response, long requestTimeNanos,
+			StreamConsumer consumer) {
+		try (ResponseBody body = response.body()) {
 			long keyBundleTag = Long.parseLong(response.headers().get(KEY_BUNDLE_TAG_HEADER));
-			storage.setLastKeyBundleTag(keyBundleTag);
-			Proto.ProblematicEventWrapper problematicEventWrapper =
-					Proto.ProblematicEventWrapper.parseFrom(response.body().byteStream());
-			ArrayList<ProblematicEventInfo> problematicEventInfos = new ArrayList<>();
-			for (Proto.ProblematicEvent event : problematicEventWrapper.getEventsList()) {
-				problematicEventInfos.add(new ProblematicEventInfo(event.getIdentity().toByteArray(),
-						event.getSecretKeyForIdentity().toByteArray(), event.getStartTime(), event.getEndTime(),
-						event.getEncryptedAssociatedData().toByteArray(), event.getCipherTextNonce().toByteArray()));
-			}
-			return problematicEventInfos;
-		} catch (IOException e) {
+			consumer.onKeyBundleTag(keyBundleTag);
+			TimedInputStream inputStream = new TimedInputStream(body.byteStream());
+			ProblematicEventDecoder.decode(inputStream, consumer);
+			return new StreamingResult(keyBundleTag, inputStream.getBytesRead(),
+					requestTimeNanos + inputStream.getReadTimeNanos());
+		} catch (IOException | NumberFormatException e) {
 			return null;
 		}
 	}
 
-	public interface Callback {
-		void onTraceKeysLoaded(List<ProblematicEventInfo> traceKeys);
+	public static class StreamingResult {
+
+		private final long keyBundleTag;
+		private final long bytesRead;
+		private final long networkTimeNanos;
+
+		private StreamingResult(long keyBundleTag, long bytesRead, long networkTimeNanos) {
+			this.keyBundleTag = keyBundleTag;
+			this.bytesRead = bytesRead;
+			this.networkTimeNanos = networkTimeNanos;
+		}
+
+		public long getKeyBundleTag() {
+			return keyBundleTag;
+		}
+
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		/**
+		 * @return the time spent waiting for the response headers and body, i.e. the network share of the download
+		 */
+		public long getNetworkTimeNanos() {
+			return networkTimeNanos;
+		}
+
+	}
+
+
+	public interface StreamConsumer extends ProblematicEventDecoder.Consumer {
+		/**
+		 * Called with the key bundle tag of the response before the first event
+		 */
+		void onKeyBundleTag(long keyBundleTag);
 
 	}
 
@@ -0,0 +1,33 @@
+package ch.ubique.notifyme.app.qr;
+
+import java.util.HashMap;
+
+import ch.ubique.notifyme.base.utils.Metrics;
+
+/**
+ * Reusable byte buffers keyed by their size. Camera frames keep the same size while scanning, so after the first frame
+ * every buffer is served from the pool. Buffers are not shared between threads, the pool is meant to be owned by the
+ * analyzer thread.
+ */
+public class FrameBufferPool {
+
+	/**
+	 * A frame size change (e.g. a new camera configuration) drops the old buffers once more sizes than this are pooled
+	 */
+	private static final int MAX_POOLED_SIZES = 4;
+
+	private final HashMap<Integer, byte[]> buffers = new HashMap<>();
+
+	public byte[] obtain(int size) {
+		byte[] buffer = buffers.get(size);
+		if (buffer == null) {
+			if (buffers.size() >= MAX_POOLED_SIZES) buffers.clear();
+			buffer = new byte[size];
+			buffers.put(size, buffer);
+			Metrics.increment(Metrics.Counter.QR_BUFFER_ALLOCATIONS);
+			Metrics.add(Metrics.Counter.QR_ALLOCATED_BUFFER_BYTES, size);
+		}
+		return buffer;
+	}
+
+}
@@ -1,5 +1,6 @@
 package ch.ubique.notifyme.app.qr;
 
+import android.graphics.Rect;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.camera.core.ImageAnalysis;
@@ -11,11 +12,24 @@ import com.google.zxing.*;
 import com.google.zxing.common.HybridBinarizer;
 import com.google.zxing.multi.qrcode.QRCodeMultiReader;
 
+import ch.ubique.notifyme.base.utils.Metrics;
+
 public class QrCodeAnalyzer implements ImageAnalysis.Analyzer {
 
 	private final static String TAG = QrCodeAnalyzer.class.getCanonicalName();
 
 	private Listener listener;
+	private final QRCodeMultiReader reader = new QRCodeMultiReader();
+	private final FrameBufferPool planeBufferPool = new FrameBufferPool();
+	private final FrameBufferPool matrixBufferPool = new FrameBufferPool();
+	private final FrameBufferPool downscaleBufferPool = new FrameBufferPool();
+	private volatile Viewfinder viewfinder;
+	/**
+	 * The tier that last found a code, later scanner sessions start there since codes tend to be scanned the same way
+	 */
+	private static volatile ScanTier successfulTier = ScanTier.VIEWFINDER;
+	private ScanTier scanTier = successfulTier;
+	private volatile boolean stopped = false;
 
 	public QrCodeAnalyzer(Listener listener) {
 		this.listener = listener;
@@ -23,42 +37,47 @@ public class QrCodeAnalyzer implements ImageAnalysis.Analyzer {
 
 	@Override
 	public void analyze(@NonNull ImageProxy image) {
+		Metrics.increment(Metrics.Counter.QR_FRAMES);
+		// Frames arriving during a decode are already dropped by STRATEGY_KEEP_ONLY_LATEST, so every frame is decoded
+		if (stopped) {
+			image.close();
+			return;
+		}
+		long decodeStart = Metrics.beginSpan(Metrics.Span.QR_DECODE);
 
 		int width = image.getWidth();
 		int height = image.getHeight();
-		int ySize = width * height;
-
-		byte[] imageData = new byte[ySize];
-
-		ByteBuffer yBuffer = image.getPlanes()[0].getBuffer();
-
-		int rowStride = image.getPlanes()[0].getRowStride();
-		int pos = 0;
-
-		if (rowStride == width) { // likely
-			yBuffer.get(imageData, 0, ySize);
-			pos += ySize;
+		ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+		ByteBuffer yBuffer = yPlane.getBuffer();
+		int rowStride = yPlane.getRowStride();
+
+		byte[] yData;
+		if (yBuffer.hasArray() && yBuffer.arrayOffset() == 0 && yBuffer.position() == 0) {
+			yData = yBuffer.array();
+			Metrics.increment(Metrics.Counter.QR_ZERO_COPY_FRAMES);
 		} else {
-			int yBufferPos = -rowStride; // not an actual position
-			for (; pos < ySize; pos += width) {
-				yBufferPos += rowStride;
-				yBuffer.position(yBufferPos);
-				yBuffer.get(imageData, pos, width);
-			}
+			// The last row of the plane might not be padded to the full row stride
+			yData = planeBufferPool.obtain(rowStride * height);
+			yBuffer.rewind();
+			yBuffer.get(yData, 0, Math.min(yBuffer.remaining(), yData.length));
 		}
 
-		PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(
-				imageData,
-				image.getWidth(), image.getHeight(),
-				0, 0,
-				image.getWidth(), image.getHeight(),
-				false
-		);
-
+		ScanTier tier = scanTier;
+		LuminanceSource source = createLuminanceSource(tier, yData, rowStride, width, height,
+				image.getImageInfo().getRotationDegrees());
+		if (source == null) {
+			tier = ScanTier.DOWNSCALED;
+			source = createLuminanceSource(tier, yData, rowStride, width, height, 0);
+		}
 		BinaryBitmap binaryBitmap = new BinaryBitmap(new HybridBinarizer(source));
+		Metrics.increment(tier.attemptCounter);
 
 		try {
-			Result result = new QRCodeMultiReader().decode(binaryBitmap);
+			Result result = reader.decode(binaryBitmap);
+			Metrics.increment(tier.successCounter);
+			// Keep decoding at the tier that found the code
+			scanTier = tier;
+			successfulTier = tier;
 			checkQrCode(result);
 		}
 		// Catch all kinds of dubious exceptions that zxing throws
@@ -67,14 +86,60 @@ public class QrCodeAnalyzer implements ImageAnalysis.Analyzer {
 		} catch (ChecksumException e) {
 			Log.w(TAG, "Caught ChecksumException");
 		} catch (NotFoundException e) {
-			// Do nothing
+			// Escalate to the next tier for the next frame, starting over after the full resolution frame
+			scanTier = tier.next();
 			listener.noQRCodeFound();
 		} finally {
+			reader.reset();
+			Metrics.endSpan(Metrics.Span.QR_DECODE, decodeStart);
 			// Must be called else new images won't be received or camera may stall (depending on back pressure setting)
 			image.close();
 		}
 	}
 
+	/**
+	 * Stops decoding, frames delivered afterwards are closed right away. Call this once a code has been accepted.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Sets the viewfinder overlay, the region behind it is decoded first
+	 */
+	public void setViewfinder(Viewfinder viewfinder) {
+		this.viewfinder = viewfinder;
+	}
+
+	private LuminanceSource createLuminanceSource(ScanTier tier, byte[] yData, int rowStride, int width, int height,
+			int rotationDegrees) {
+		switch (tier) {
+			case VIEWFINDER:
+				Viewfinder viewfinder = this.viewfinder;
+				Rect region = viewfinder != null ? viewfinder.toImageRect(width, height, rotationDegrees) : null;
+				if (region == null) return null;
+				return new YPlaneLuminanceSource(yData, rowStride, region.left, region.top, region.width(), region.height(),
+						matrixBufferPool);
+			case DOWNSCALED:
+				int scaledWidth = width / 2;
+				int scaledHeight = height / 2;
+				byte[] scaledData = downscaleBufferPool.obtain(scaledWidth * scaledHeight);
+				for (int y = 0; y < scaledHeight; y++) {
+					int inputOffset = 2 * y * rowStride;
+					int outputOffset = y * scaledWidth;
+					for (int x = 0; x < scaledWidth; x++) {
+						int topLeft = inputOffset + 2 * x;
+						int sum = (yData[topLeft] & 0xff) + (yData[topLeft + 1] & 0xff) +
+								(yData[topLeft + rowStride] & 0xff) + (yData[topLeft + rowStride + 1] & 0xff);
+						scaledData[outputOffset + x] = (byte) (sum >> 2);
+					}
+				}
+				return new YPlaneLuminanceSource(scaledData, scaledWidth, 0, 0, scaledWidth, scaledHeight, matrixBufferPool);
+			default:
+				return new YPlaneLuminanceSource(yData, rowStride, 0, 0, width, height, matrixBufferPool);
+		}
+	}
+
 	private void checkQrCode(Result qrCode) {
 		if (qrCode != null) {
 			listener.onQRCodeFound(qrCode.getText());
@@ -83,6 +148,29 @@ public class QrCodeAnalyzer implements ImageAnalysis.Analyzer {
 		}
 	}
 
+	/**
+	 * Regions of the frame that are decoded, ordered by cost. Every frame is decoded at one tier only, so that the
+	 * decoding keeps up with the camera.
+	 */
+	public enum ScanTier {
+		VIEWFINDER(Metrics.Counter.QR_VIEWFINDER_ATTEMPTS, Metrics.Counter.QR_VIEWFINDER_DECODES),
+		DOWNSCALED(Metrics.Counter.QR_DOWNSCALED_ATTEMPTS, Metrics.Counter.QR_DOWNSCALED_DECODES),
+		FULL_RESOLUTION(Metrics.Counter.QR_FULL_RESOLUTION_ATTEMPTS, Metrics.Counter.QR_FULL_RESOLUTION_DECODES);
+
+		private final Metrics.Counter attemptCounter;
+		private final Metrics.Counter successCounter;
+
+		ScanTier(Metrics.Counter attemptCounter, Metrics.Counter successCounter) {
+			this.attemptCounter = attemptCounter;
+			this.successCounter = successCounter;
+		}
+
+		private ScanTier next() {
+			ScanTier[] tiers = values();
+			return tiers[(ordinal() + 1) % tiers.length];
+		}
+	}
+
 	public interface Listener {
 		void onQRCodeFound(String qrCodeData);
 
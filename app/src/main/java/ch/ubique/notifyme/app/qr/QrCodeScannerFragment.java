@@ -3,11 +3,13 @@ package ch.ubique.notifyme.app.qr;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Rect;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.LayerDrawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
+import android.util.Size;
 import android.view.View;
 import android.widget.ImageButton;
 import android.widget.TextView;
@@ -52,11 +54,18 @@ public class QrCodeScannerFragment extends Fragment implements QrCodeAnalyzer.Li
 	public final static String TAG = QrCodeScannerFragment.class.getCanonicalName();
 	private static final int PERMISSION_REQUEST_CAMERA = 13;
 	private static final long MIN_ERROR_VISIBILITY = 1000L;
+	/**
+	 * Large enough for a QR code held at arm's length, in portrait orientation
+	 */
+	private static final Size ANALYSIS_TARGET_RESOLUTION = new Size(720, 1280);
 
 	private MainViewModel viewModel;
 	private PreviewView previewView;
 	private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
 	private ExecutorService cameraExecutor;
+	private QrCodeAnalyzer qrCodeAnalyzer;
+	private ImageAnalysis imageAnalysis;
+	private View viewfinderView;
 	private ImageButton flashButton;
 	private TextView invalidCodeText;
 	private View topLeftIndicator;
@@ -119,6 +128,9 @@ public class QrCodeScannerFragment extends Fragment implements QrCodeAnalyzer.Li
 		bottomRightIndicator = view.findViewById(R.id.qr_code_scanner_bottom_right_indicator);
 		errorView = view.findViewById(R.id.fragment_qr_scanner_error_view);
 		mainView = view.findViewById(R.id.fragment_qr_scanner_main_view);
+		viewfinderView = view.findViewById(R.id.qr_code_scanner_camera_hole);
+		viewfinderView.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) ->
+				updateViewfinder());
 		Toolbar toolbar = view.findViewById(R.id.fragment_qr_scanner_toolbar);
 
 		toolbar.setNavigationOnClickListener(v -> getActivity().getSupportFragmentManager().popBackStack());
@@ -154,13 +166,18 @@ public class QrCodeScannerFragment extends Fragment implements QrCodeAnalyzer.Li
 				Preview preview = new Preview.Builder().build();
 				preview.setSurfaceProvider(previewView.getSurfaceProvider());
 
-				ImageAnalysis imageAnalyzer = new ImageAnalysis.Builder().build();
-				imageAnalyzer.setAnalyzer(cameraExecutor, new QrCodeAnalyzer(this));
+				imageAnalysis = new ImageAnalysis.Builder()
+						.setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+						.setTargetResolution(ANALYSIS_TARGET_RESOLUTION)
+						.build();
+				qrCodeAnalyzer = new QrCodeAnalyzer(this);
+				updateViewfinder();
+				imageAnalysis.setAnalyzer(cameraExecutor, qrCodeAnalyzer);
 
 				CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
 
 				cameraProvider.unbindAll();
-				Camera camera = cameraProvider.bindToLifecycle(getViewLifecycleOwner(), cameraSelector, preview, imageAnalyzer);
+				Camera camera = cameraProvider.bindToLifecycle(getViewLifecycleOwner(), cameraSelector, preview, imageAnalysis);
 				setupFlashButton(camera);
 			} catch (ExecutionException | InterruptedException e) {
 				Log.d(TAG, "Error starting camera " + e.getMessage());
@@ -170,6 +187,13 @@ public class QrCodeScannerFragment extends Fragment implements QrCodeAnalyzer.Li
 	}
 
 
+	private void updateViewfinder() {
+		if (qrCodeAnalyzer == null || viewfinderView == null) return;
+		Rect viewfinder = new Rect(viewfinderView.getLeft() - previewView.getLeft(), viewfinderView.getTop() - previewView.getTop(),
+				viewfinderView.getRight() - previewView.getLeft(), viewfinderView.getBottom() - previewView.getTop());
+		qrCodeAnalyzer.setViewfinder(new Viewfinder(viewfinder, previewView.getWidth(), previewView.getHeight()));
+	}
+
 	@Override
 	public void onDestroy() {
 		super.onDestroy();
@@ -187,6 +211,7 @@ public class QrCodeScannerFragment extends Fragment implements QrCodeAnalyzer.Li
 		try {
 			VenueInfo venueInfo = CrowdNotifier.getVenueInfo(qrCodeData, BuildConfig.ENTRY_QR_CODE_PREFIX);
 			isQRScanningEnabled = false;
+			stopAnalysis();
 			if (getActivity() != null) getActivity().runOnUiThread(() -> viewModel.setCheckInState(
 					new CheckInState(false, venueInfo, System.currentTimeMillis(), System.currentTimeMillis(),
 							ReminderOption.OFF)));
@@ -197,6 +222,12 @@ public class QrCodeScannerFragment extends Fragment implements QrCodeAnalyzer.Li
 		}
 	}
 
+	private void stopAnalysis() {
+		if (qrCodeAnalyzer != null) qrCodeAnalyzer.stop();
+		ImageAnalysis imageAnalysis = this.imageAnalysis;
+		if (getActivity() != null && imageAnalysis != null) getActivity().runOnUiThread(imageAnalysis::clearAnalyzer);
+	}
+
 	private void handleInvalidQRCodeExceptions(String qrCodeData, QrUtils.QRException e) {
 		if (e instanceof QrUtils.InvalidQRCodeVersionException) {
 			if (getActivity() != null) getActivity().runOnUiThread(() -> {
@@ -213,6 +244,7 @@ public class QrCodeScannerFragment extends Fragment implements QrCodeAnalyzer.Li
 		} else {
 			if (qrCodeData.startsWith(BuildConfig.TRACE_QR_CODE_PREFIX)) {
 				isQRScanningEnabled = false;
+				stopAnalysis();
 				Intent openBrowserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(qrCodeData));
 				startActivity(openBrowserIntent);
 				goToHome = true;
@@ -0,0 +1,65 @@
+package ch.ubique.notifyme.app.qr;
+
+import android.graphics.Rect;
+
+/**
+ * Position of the viewfinder overlay within the camera preview. The preview shows the camera frame scaled to fill the view
+ * and center cropped, so the viewfinder can be mapped back to the region of the unrotated camera frame the user aims at.
+ */
+public class Viewfinder {
+
+	/**
+	 * The analysis frame and the preview might not be cropped exactly the same, so the region is enlarged on every side by
+	 * this fraction of its size
+	 */
+	private static final float MARGIN = 0.1f;
+
+	private final Rect viewfinder;
+	private final int previewWidth;
+	private final int previewHeight;
+
+	public Viewfinder(Rect viewfinder, int previewWidth, int previewHeight) {
+		this.viewfinder = new Rect(viewfinder);
+		this.previewWidth = previewWidth;
+		this.previewHeight = previewHeight;
+	}
+
+	/**
+	 * @return the region of the camera frame behind the viewfinder, or null if the viewfinder is not known yet
+	 */
+	public Rect toImageRect(int imageWidth, int imageHeight, int rotationDegrees) {
+		if (previewWidth <= 0 || previewHeight <= 0 || viewfinder.isEmpty()) return null;
+		boolean rotated = rotationDegrees == 90 || rotationDegrees == 270;
+		int uprightWidth = rotated ? imageHeight : imageWidth;
+		int uprightHeight = rotated ? imageWidth : imageHeight;
+
+		float scale = Math.max(previewWidth / (float) uprightWidth, previewHeight / (float) uprightHeight);
+		float offsetX = (previewWidth - uprightWidth * scale) / 2;
+		float offsetY = (previewHeight - uprightHeight * scale) / 2;
+		float marginX = viewfinder.width() * MARGIN;
+		float marginY = viewfinder.height() * MARGIN;
+		int left = (int) ((viewfinder.left - marginX - offsetX) / scale);
+		int top = (int) ((viewfinder.top - marginY - offsetY) / scale);
+		int right = (int) ((viewfinder.right + marginX - offsetX) / scale);
+		int bottom = (int) ((viewfinder.bottom + marginY - offsetY) / scale);
+
+		Rect imageRect;
+		switch (rotationDegrees) {
+			case 90:
+				imageRect = new Rect(top, imageHeight - right, bottom, imageHeight - left);
+				break;
+			case 180:
+				imageRect = new Rect(imageWidth - right, imageHeight - bottom, imageWidth - left, imageHeight - top);
+				break;
+			case 270:
+				imageRect = new Rect(imageWidth - bottom, left, imageWidth - top, right);
+				break;
+			default:
+				imageRect = new Rect(left, top, right, bottom);
+				break;
+		}
+		if (!imageRect.intersect(0, 0, imageWidth, imageHeight)) return null;
+		return imageRect;
+	}
+
+}
@@ -0,0 +1,69 @@
+package ch.ubique.notifyme.app.qr;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Luminance source reading the Y plane of a YUV_420_888 frame in its original layout, i.e. with the row stride of the
+ * camera, so the plane does not have to be repacked row by row. Buffers needed for the luminance matrix are taken from
+ * the {@link FrameBufferPool}.
+ */
+public class YPlaneLuminanceSource extends LuminanceSource {
+
+	private final byte[] yData;
+	private final int rowStride;
+	private final int left;
+	private final int top;
+	private final FrameBufferPool bufferPool;
+
+	public YPlaneLuminanceSource(byte[] yData, int rowStride, int left, int top, int width, int height,
+			FrameBufferPool bufferPool) {
+		super(width, height);
+		this.yData = yData;
+		this.rowStride = rowStride;
+		this.left = left;
+		this.top = top;
+		this.bufferPool = bufferPool;
+	}
+
+	@Override
+	public byte[] getRow(int y, byte[] row) {
+		if (y < 0 || y >= getHeight()) {
+			throw new IllegalArgumentException("Requested row is outside the image: " + y);
+		}
+		int width = getWidth();
+		if (row == null || row.length < width) {
+			row = new byte[width];
+		}
+		System.arraycopy(yData, (y + top) * rowStride + left, row, 0, width);
+		return row;
+	}
+
+	@Override
+	public byte[] getMatrix() {
+		int width = getWidth();
+		int height = getHeight();
+		if (width == rowStride && left == 0 && top == 0) {
+			// The plane is packed, the matrix can be returned without a copy
+			return yData;
+		}
+
+		byte[] matrix = bufferPool.obtain(width * height);
+		int inputOffset = top * rowStride + left;
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(yData, inputOffset, matrix, y * width, width);
+			inputOffset += rowStride;
+		}
+		return matrix;
+	}
+
+	@Override
+	public boolean isCropSupported() {
+		return true;
+	}
+
+	@Override
+	public LuminanceSource crop(int left, int top, int width, int height) {
+		return new YPlaneLuminanceSource(yData, rowStride, this.left + left, this.top + top, width, height, bufferPool);
+	}
+
+}
@@ -20,9 +20,7 @@ import org.crowdnotifier.android.sdk.model.ExposureEvent;
 import ch.ubique.notifyme.app.MainViewModel;
 import ch.ubique.notifyme.app.R;
 import ch.ubique.notifyme.app.reports.items.*;
-import ch.ubique.notifyme.app.utils.DiaryStorage;
 import ch.ubique.notifyme.base.utils.ErrorState;
-import ch.ubique.notifyme.base.utils.StringUtils;
 
 public class ReportsFragment extends Fragment {
 
@@ -32,7 +30,9 @@ public class ReportsFragment extends Fragment {
 	private ReportsRecyclerAdapter recyclerAdapter = new ReportsRecyclerAdapter();
 	private Toolbar toolbar;
 	private SwipeRefreshLayout swipeRefreshLayout;
-	private DiaryStorage diaryStorage;
+	private VenueVisitListPresenter presenter;
+	private List<ExposureEvent> shownExposures;
+	private List<VenueVisitRecyclerItem> visitItems = new ArrayList<>();
 
 	public ReportsFragment() { super(R.layout.fragment_reports); }
 
@@ -56,11 +56,17 @@ public class ReportsFragment extends Fragment {
 		recyclerView.setAdapter(recyclerAdapter);
 		recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
 
-		diaryStorage = DiaryStorage.getInstance(getContext());
-		viewModel.getExposures()
-				.observe(getViewLifecycleOwner(), exposures -> publishRecyclerItems(exposures, viewModel.getErrorState().getValue()));
-		viewModel.getErrorState()
-				.observe(getViewLifecycleOwner(), errorState -> publishRecyclerItems(viewModel.getExposures().getValue(), errorState));
+		presenter = new VenueVisitListPresenter(requireContext());
+		shownExposures = null;
+		visitItems = new ArrayList<>();
+		viewModel.getExposures().observe(getViewLifecycleOwner(), exposures ->
+				presenter.buildReportItems(exposures, (exposureEvent, diaryEntry) ->
+						showExposureScreen(exposureEvent), items -> {
+					shownExposures = exposures;
+					visitItems = items;
+					publishRecyclerItems(viewModel.getErrorState().getValue());
+				}));
+		viewModel.getErrorState().observe(getViewLifecycleOwner(), this::publishRecyclerItems);
 
 		swipeRefreshLayout.setOnRefreshListener(() -> viewModel.refreshTraceKeys());
 
@@ -68,7 +74,14 @@ public class ReportsFragment extends Fragment {
 				swipeRefreshLayout.setRefreshing(loadingState == MainViewModel.LoadingState.LOADING));
 	}
 
-	private void publishRecyclerItems(List<ExposureEvent> exposures, ErrorState errorState) {
+	@Override
+	public void onDestroyView() {
+		super.onDestroyView();
+		presenter.cancel();
+	}
+
+	private void publishRecyclerItems(ErrorState errorState) {
+		List<ExposureEvent> exposures = shownExposures;
 		ArrayList<VenueVisitRecyclerItem> items = new ArrayList<>();
 
 		if (errorState != null) {
@@ -90,19 +103,7 @@ public class ReportsFragment extends Fragment {
 			items.add(new ItemReportsHeader(v -> Toast.makeText(getContext(), "TODO", Toast.LENGTH_SHORT).show()));
 		}
 
-		if (exposures != null) {
-			String daysAgoString = "";
-			for (ExposureEvent exposureEvent : exposures) {
-				String newDaysAgoString = StringUtils.getDaysAgoString(exposureEvent.getStartTime(), getContext());
-				if (!newDaysAgoString.equals(daysAgoString)) {
-					daysAgoString = newDaysAgoString;
-					items.add(new ItemVenueVisitDayHeader(daysAgoString));
-				}
-				items.add(new ItemVenueVisit(exposureEvent, diaryStorage.getDiaryEntryWithId(exposureEvent.getId()),
-						v -> showExposureScreen(exposureEvent)));
-			}
-		}
-
+		items.addAll(visitItems);
 		recyclerAdapter.setData(items);
 	}
 
@@ -7,25 +7,32 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import org.crowdnotifier.android.sdk.model.VenueInfo;
-
 import ch.ubique.notifyme.app.R;
 import ch.ubique.notifyme.app.reports.items.*;
 import ch.ubique.notifyme.base.utils.ErrorHelper;
-import ch.ubique.notifyme.base.utils.StringUtils;
-import ch.ubique.notifyme.base.utils.VenueInfoExtensions;
 
 public class ReportsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-	List<VenueVisitRecyclerItem> items = new ArrayList<>();
+	private final AsyncListDiffer<VenueVisitRecyclerItem> differ =
+			new AsyncListDiffer<>(this, VenueVisitRecyclerItem.DIFF_CALLBACK);
+
+	public ReportsRecyclerAdapter() {
+		setHasStableIds(true);
+	}
+
+	@Override
+	public int getItemViewType(int position) { return differ.getCurrentList().get(position).getViewType().getId(); }
 
 	@Override
-	public int getItemViewType(int position) { return items.get(position).getViewType().getId(); }
+	public long getItemId(int position) {
+		return differ.getCurrentList().get(position).getStableId();
+	}
 
 	@NonNull
 	@Override
@@ -56,7 +63,7 @@ public class ReportsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.Vi
 
 	@Override
 	public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-		VenueVisitRecyclerItem item = items.get(position);
+		VenueVisitRecyclerItem item = differ.getCurrentList().get(position);
 
 		switch (item.getViewType()) {
 			case NO_REPORTS_HEADER:
@@ -79,14 +86,14 @@ public class ReportsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.Vi
 
 	@Override
 	public int getItemCount() {
-		return items.size();
+		return differ.getCurrentList().size();
 	}
 
+	/**
+	 * Diffs the items against the current ones on a background thread and only updates the rows that changed
+	 */
 	public void setData(List<VenueVisitRecyclerItem> items) {
-		//TODO: Add DiffUtil
-		this.items.clear();
-		this.items.addAll(items);
-		notifyDataSetChanged();
+		differ.submitList(new ArrayList<>(items));
 	}
 
 
@@ -160,11 +167,10 @@ public class ReportsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.Vi
 
 		public void bind(ItemVenueVisit item) {
 			if (item.getDiaryEntry() != null) {
-				VenueInfo venueInfo = item.getDiaryEntry().getVenueInfo();
-				nameTextView.setText(venueInfo.getTitle());
-				locationTextView.setText(VenueInfoExtensions.getSubtitle(venueInfo));
+				nameTextView.setText(item.getTitle());
+				locationTextView.setText(item.getSubtitle());
 				venueTypeIcon.setVisibility(View.VISIBLE);
-				venueTypeIcon.setImageResource(VenueInfoExtensions.getVenueTypeDrawable(venueInfo));
+				venueTypeIcon.setImageResource(item.getVenueTypeDrawable());
 				hiddenEventPlaceholder.setVisibility(View.GONE);
 			} else {
 				nameTextView.setText("");
@@ -174,9 +180,7 @@ public class ReportsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.Vi
 			}
 			statusIcon.setImageDrawable(ContextCompat.getDrawable(itemView.getContext(),
 					ch.ubique.notifyme.base.R.drawable.ic_info));
-			String start = StringUtils.getHourMinuteTimeString(item.getExposure().getStartTime(), ":");
-			String end = StringUtils.getHourMinuteTimeString(item.getExposure().getEndTime(), ":");
-			timeTextView.setText(start + " — " + end);
+			timeTextView.setText(item.getTimeString());
 			itemView.setOnClickListener(item.getOnClickListener());
 
 			if (item.getExposure().getMessage() != null && !item.getExposure().getMessage().isEmpty()) {
@@ -20,6 +20,16 @@ public class ItemError extends VenueVisitRecyclerItem {
 		return customButtonAction;
 	}
 
+	@Override
+	public long getStableId() {
+		return -3;
+	}
+
+	@Override
+	public boolean isContentTheSame(VenueVisitRecyclerItem other) {
+		return other instanceof ItemError && errorState == ((ItemError) other).errorState;
+	}
+
 	@Override
 	public ViewType getViewType() {
 		return ViewType.ERROR;
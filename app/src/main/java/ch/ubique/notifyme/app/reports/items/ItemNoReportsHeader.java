@@ -2,6 +2,16 @@ package ch.ubique.notifyme.app.reports.items;
 
 public class ItemNoReportsHeader extends VenueVisitRecyclerItem {
 
+	@Override
+	public long getStableId() {
+		return -1;
+	}
+
+	@Override
+	public boolean isContentTheSame(VenueVisitRecyclerItem other) {
+		return true;
+	}
+
 	@Override
 	public ViewType getViewType() {
 		return ViewType.NO_REPORTS_HEADER;
@@ -14,6 +14,16 @@ public class ItemReportsHeader extends VenueVisitRecyclerItem {
 		return clickListener;
 	}
 
+	@Override
+	public long getStableId() {
+		return -2;
+	}
+
+	@Override
+	public boolean isContentTheSame(VenueVisitRecyclerItem other) {
+		return true;
+	}
+
 	@Override
 	public ViewType getViewType() {
 		return ViewType.REPORTS_HEADER;
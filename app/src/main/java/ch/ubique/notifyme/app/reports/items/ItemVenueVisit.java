@@ -1,21 +1,43 @@
 package ch.ubique.notifyme.app.reports.items;
 
+import android.text.TextUtils;
 import android.view.View;
+import androidx.annotation.DrawableRes;
+
+import java.util.Arrays;
 
 import org.crowdnotifier.android.sdk.model.ExposureEvent;
+import org.crowdnotifier.android.sdk.model.VenueInfo;
 
 import ch.ubique.notifyme.app.model.DiaryEntry;
+import ch.ubique.notifyme.base.utils.VenueInfoExtensions;
 
+/**
+ * Immutable row model of a venue visit. Everything displayed is resolved when the item is created, which happens off the
+ * main thread in the {@link VenueVisitListPresenter}, so binding the row only sets the values.
+ */
 public class ItemVenueVisit extends VenueVisitRecyclerItem {
 
-	private ExposureEvent exposure;
-	private DiaryEntry diaryEntry;
-	private View.OnClickListener onClickListener;
+	private final ExposureEvent exposure;
+	private final DiaryEntry diaryEntry;
+	private final String timeString;
+	private final String subtitle;
+	@DrawableRes private final int venueTypeDrawable;
+	private final View.OnClickListener onClickListener;
 
-	public ItemVenueVisit(ExposureEvent exposure, DiaryEntry diaryEntry, View.OnClickListener onClickListener) {
+	public ItemVenueVisit(ExposureEvent exposure, DiaryEntry diaryEntry, String timeString,
+			View.OnClickListener onClickListener) {
 		this.exposure = exposure;
 		this.diaryEntry = diaryEntry;
+		this.timeString = timeString;
 		this.onClickListener = onClickListener;
+		if (diaryEntry != null) {
+			subtitle = VenueInfoExtensions.getSubtitle(diaryEntry.getVenueInfo());
+			venueTypeDrawable = VenueInfoExtensions.getVenueTypeDrawable(diaryEntry.getVenueInfo());
+		} else {
+			subtitle = "";
+			venueTypeDrawable = 0;
+		}
 	}
 
 	public ExposureEvent getExposure() {
@@ -26,10 +48,60 @@ public class ItemVenueVisit extends VenueVisitRecyclerItem {
 		return diaryEntry;
 	}
 
+	public String getTitle() {
+		return diaryEntry != null ? diaryEntry.getVenueInfo().getTitle() : "";
+	}
+
+	public String getSubtitle() {
+		return subtitle;
+	}
+
+	@DrawableRes
+	public int getVenueTypeDrawable() {
+		return venueTypeDrawable;
+	}
+
+	public String getTimeString() {
+		return timeString;
+	}
+
 	public View.OnClickListener getOnClickListener() {
 		return onClickListener;
 	}
 
+	@Override
+	public long getStableId() {
+		return exposure != null ? exposure.getId() : diaryEntry.getId();
+	}
+
+	@Override
+	public boolean isContentTheSame(VenueVisitRecyclerItem other) {
+		if (!(other instanceof ItemVenueVisit)) return false;
+		ItemVenueVisit otherVisit = (ItemVenueVisit) other;
+		return TextUtils.equals(timeString, otherVisit.timeString) && isSameExposure(exposure, otherVisit.exposure) &&
+				isSameDiaryEntry(diaryEntry, otherVisit.diaryEntry);
+	}
+
+	private static boolean isSameExposure(ExposureEvent e1, ExposureEvent e2) {
+		if (e1 == null || e2 == null) return e1 == e2;
+		return e1.getId() == e2.getId() && e1.getStartTime() == e2.getStartTime() && e1.getEndTime() == e2.getEndTime() &&
+				TextUtils.equals(e1.getMessage(), e2.getMessage());
+	}
+
+	private static boolean isSameDiaryEntry(DiaryEntry d1, DiaryEntry d2) {
+		if (d1 == null || d2 == null) return d1 == d2;
+		return d1.getId() == d2.getId() && d1.getArrivalTime() == d2.getArrivalTime() &&
+				d1.getDepartureTime() == d2.getDepartureTime() && TextUtils.equals(d1.getComment(), d2.getComment()) &&
+				isSameVenue(d1.getVenueInfo(), d2.getVenueInfo());
+	}
+
+	private static boolean isSameVenue(VenueInfo v1, VenueInfo v2) {
+		if (v1 == v2) return true;
+		if (v1 == null || v2 == null) return false;
+		return TextUtils.equals(v1.getTitle(), v2.getTitle()) && TextUtils.equals(v1.getAddress(), v2.getAddress()) &&
+				Arrays.equals(v1.getCountryData(), v2.getCountryData());
+	}
+
 	@Override
 	public ViewType getViewType() {
 		return ViewType.REPORT;
@@ -12,6 +12,16 @@ public class ItemVenueVisitDayHeader extends VenueVisitRecyclerItem {
 		return dayLabel;
 	}
 
+	@Override
+	public long getStableId() {
+		return -4 - (dayLabel.hashCode() & 0xffffffffL);
+	}
+
+	@Override
+	public boolean isContentTheSame(VenueVisitRecyclerItem other) {
+		return other instanceof ItemVenueVisitDayHeader && dayLabel.equals(((ItemVenueVisitDayHeader) other).dayLabel);
+	}
+
 	@Override
 	public ViewType getViewType() {
 		return ViewType.REPORTS_DAY_HEADER;
@@ -0,0 +1,162 @@
+package ch.ubique.notifyme.app.reports.items;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.crowdnotifier.android.sdk.model.ExposureEvent;
+
+import ch.ubique.notifyme.app.model.DiaryEntry;
+import ch.ubique.notifyme.app.utils.DiaryStorage;
+import ch.ubique.notifyme.base.utils.StringUtils;
+
+/**
+ * Builds the rows of the diary and reports lists on a background thread. The diary snapshot is taken on that thread as well,
+ * since it may have to load the diary from disk. Exposures are joined to diary entries by id,
+ * day headers are inserted in the same pass and all strings are formatted up front, so the fragments only have to submit
+ * the finished list. Only the result of the latest request is delivered, on the main thread.
+ * <p>
+ * The diary rows are only rebuilt if the diary version or the exposures have changed since the last build, otherwise the
+ * previous rows are reused and the callback is skipped if they have already been delivered.
+ */
+public class VenueVisitListPresenter {
+
+	private static ExecutorService executor;
+
+	private final Context context;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private int generation = 0;
+	private List<VenueVisitRecyclerItem> deliveredItems;
+	/**
+	 * Inputs and result of the last diary build, only accessed on the executor thread
+	 */
+	private List<ExposureEvent> lastDiaryExposures;
+	private long lastDiaryVersion = -1;
+	private List<VenueVisitRecyclerItem> lastDiaryItems;
+
+	public VenueVisitListPresenter(Context context) {
+		this.context = context.getApplicationContext();
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "VenueVisitListPresenter");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Builds the diary rows, one per diary entry ordered by descending arrival time, with the matching exposure if any
+	 */
+	public void buildDiaryItems(List<ExposureEvent> exposures, OnVisitClickListener clickListener, Callback callback) {
+		submit(() -> {
+			DiaryStorage.Snapshot diarySnapshot = DiaryStorage.getInstance(context).getSnapshot();
+			if (lastDiaryItems != null && exposures == lastDiaryExposures && diarySnapshot.getVersion() == lastDiaryVersion) {
+				return lastDiaryItems;
+			}
+			HashMap<Long, ExposureEvent> exposuresById = new HashMap<>();
+			if (exposures != null) {
+				for (ExposureEvent exposureEvent : exposures) {
+					exposuresById.put(exposureEvent.getId(), exposureEvent);
+				}
+			}
+
+			ArrayList<VenueVisitRecyclerItem> items = new ArrayList<>();
+			List<DiaryEntry> diaryEntries = diarySnapshot.getEntries();
+			String daysAgoString = "";
+			for (int i = diaryEntries.size() - 1; i >= 0; i--) {
+				DiaryEntry diaryEntry = diaryEntries.get(i);
+				String newDaysAgoString = StringUtils.getDaysAgoString(diaryEntry.getArrivalTime(), context);
+				if (!newDaysAgoString.equals(daysAgoString)) {
+					daysAgoString = newDaysAgoString;
+					items.add(new ItemVenueVisitDayHeader(daysAgoString));
+				}
+				ExposureEvent exposureEvent = exposuresById.get(diaryEntry.getId());
+				items.add(new ItemVenueVisit(exposureEvent, diaryEntry,
+						getTimeString(diaryEntry.getArrivalTime(), diaryEntry.getDepartureTime()),
+						v -> clickListener.onVisitClicked(exposureEvent, diaryEntry)));
+			}
+			lastDiaryExposures = exposures;
+			lastDiaryVersion = diarySnapshot.getVersion();
+			lastDiaryItems = items;
+			return items;
+		}, callback);
+	}
+
+	/**
+	 * Builds the report rows, one per exposure in the given order, with the matching diary entry if it was not hidden
+	 */
+	public void buildReportItems(List<ExposureEvent> exposures, OnVisitClickListener clickListener, Callback callback) {
+		submit(() -> {
+			ArrayList<VenueVisitRecyclerItem> items = new ArrayList<>();
+			if (exposures == null) return items;
+			DiaryStorage.Snapshot diarySnapshot = DiaryStorage.getInstance(context).getSnapshot();
+			String daysAgoString = "";
+			for (ExposureEvent exposureEvent : exposures) {
+				String newDaysAgoString = StringUtils.getDaysAgoString(exposureEvent.getStartTime(), context);
+				if (!newDaysAgoString.equals(daysAgoString)) {
+					daysAgoString = newDaysAgoString;
+					items.add(new ItemVenueVisitDayHeader(daysAgoString));
+				}
+				DiaryEntry diaryEntry = diarySnapshot.getDiaryEntryWithId(exposureEvent.getId());
+				items.add(new ItemVenueVisit(exposureEvent, diaryEntry,
+						getTimeString(exposureEvent.getStartTime(), exposureEvent.getEndTime()),
+						v -> clickListener.onVisitClicked(exposureEvent, diaryEntry)));
+			}
+			return items;
+		}, callback);
+	}
+
+	/**
+	 * Drops the results of all pending requests, call this when the list is no longer shown
+	 */
+	public void cancel() {
+		generation++;
+		deliveredItems = null;
+	}
+
+	private void submit(ItemsBuilder itemsBuilder, Callback callback) {
+		int requestGeneration = ++generation;
+		getExecutor().execute(() -> {
+			List<VenueVisitRecyclerItem> items = itemsBuilder.build();
+			mainHandler.post(() -> {
+				if (requestGeneration == generation && items != deliveredItems) {
+					deliveredItems = items;
+					callback.onItemsBuilt(items);
+				}
+			});
+		});
+	}
+
+	private static String getTimeString(long start, long end) {
+		return StringUtils.getHourMinuteTimeString(start, ":") + " — " + StringUtils.getHourMinuteTimeString(end, ":");
+	}
+
+	private interface ItemsBuilder {
+		List<VenueVisitRecyclerItem> build();
+
+	}
+
+
+	public interface OnVisitClickListener {
+		void onVisitClicked(ExposureEvent exposureEvent, DiaryEntry diaryEntry);
+
+	}
+
+
+	public interface Callback {
+		void onItemsBuilt(List<VenueVisitRecyclerItem> items);
+
+	}
+
+}
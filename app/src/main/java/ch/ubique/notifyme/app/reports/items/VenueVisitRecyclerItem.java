@@ -1,5 +1,8 @@
 package ch.ubique.notifyme.app.reports.items;
 
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
 public abstract class VenueVisitRecyclerItem {
 	public enum ViewType {
 		NO_REPORTS_HEADER(0), REPORTS_HEADER(1), REPORT(2), REPORTS_DAY_HEADER(3), ERROR(4);
@@ -14,6 +17,31 @@ public abstract class VenueVisitRecyclerItem {
 		}
 	}
 
+	public static final DiffUtil.ItemCallback<VenueVisitRecyclerItem> DIFF_CALLBACK =
+			new DiffUtil.ItemCallback<VenueVisitRecyclerItem>() {
+				@Override
+				public boolean areItemsTheSame(@NonNull VenueVisitRecyclerItem oldItem, @NonNull VenueVisitRecyclerItem newItem) {
+					return oldItem.getViewType() == newItem.getViewType() && oldItem.getStableId() == newItem.getStableId();
+				}
+
+				@Override
+				public boolean areContentsTheSame(@NonNull VenueVisitRecyclerItem oldItem,
+						@NonNull VenueVisitRecyclerItem newItem) {
+					return oldItem.isContentTheSame(newItem);
+				}
+			};
+
 	public abstract ViewType getViewType();
 
+	/**
+	 * @return an id identifying the item across updates of the list. Exposures and diary entries use their (shared) id,
+	 * which is never negative, all other items use negative ids.
+	 */
+	public abstract long getStableId();
+
+	/**
+	 * @return whether this item displays the same content as the given item with the same stable id
+	 */
+	public abstract boolean isContentTheSame(VenueVisitRecyclerItem other);
+
 }
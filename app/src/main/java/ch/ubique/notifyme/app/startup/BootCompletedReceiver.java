@@ -4,6 +4,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 
+import ch.ubique.notifyme.app.utils.DiaryStorage;
 import ch.ubique.notifyme.app.utils.NotificationHelper;
 import ch.ubique.notifyme.app.utils.ReminderHelper;
 import ch.ubique.notifyme.base.model.CheckInState;
@@ -18,6 +19,8 @@ public class BootCompletedReceiver extends BroadcastReceiver {
 		}
 
 		invalidateCheckIn(context);
+		Storage.getInstance(context).flush();
+		DiaryStorage.getInstance(context).flush();
 	}
 
 	private void invalidateCheckIn(Context context) {
@@ -9,8 +9,12 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
@@ -20,32 +24,59 @@ import org.crowdnotifier.android.sdk.model.DayDate;
 
 import ch.ubique.notifyme.app.model.DiaryEntry;
 import ch.ubique.notifyme.app.model.DiaryEntryDeprecatedV2;
+import ch.ubique.notifyme.app.model.DiaryIndexEntry;
+import ch.ubique.notifyme.base.utils.Metrics;
+import ch.ubique.notifyme.base.utils.PersistenceWriter;
 
+/**
+ * Stores every DiaryEntry as its own encrypted record (keyed by the entry id) together with a small index of ids and time
+ * windows, so that single entries can be read and written without decrypting and re-serializing the whole diary.
+ * <p>
+ * All records are decrypted once per process into an in-memory cache, which is updated write-through on every mutation.
+ * Each mutation increments a version number, which callers can use to skip work if the diary has not changed.
+ */
 public class DiaryStorage {
 
 	private static final String KEY_DIARY_STORE = "KEY_DIARY_STORE";
 	@Deprecated private static final String KEY_DIARY_ENTRIES_V2 = "KEY_DIARY_ENTRIES";
-	private static final String KEY_DIARY_ENTRIES_V3 = "KEY_DIARY_ENTRIES_V3";
+	@Deprecated private static final String KEY_DIARY_ENTRIES_V3 = "KEY_DIARY_ENTRIES_V3";
+	private static final String KEY_DIARY_INDEX_V4 = "KEY_DIARY_INDEX_V4";
+	private static final String KEY_PREFIX_DIARY_ENTRY_V4 = "KEY_DIARY_ENTRY_V4_";
+	private static final String KEY_HIDDEN_CHECK_IN_WINDOWS_V4 = "KEY_HIDDEN_CHECK_IN_WINDOWS_V4";
+	private static final String KEY_CHECK_IN_WINDOWS_TRACKED_SINCE = "KEY_CHECK_IN_WINDOWS_TRACKED_SINCE";
 	@Deprecated private static final Type EXPOSURE_LIST_V2_TYPE = new TypeToken<ArrayList<DiaryEntryDeprecatedV2>>() { }.getType();
-	private static final Type EXPOSURE_LIST_V3_TYPE = new TypeToken<ArrayList<DiaryEntry>>() { }.getType();
+	@Deprecated private static final Type EXPOSURE_LIST_V3_TYPE = new TypeToken<ArrayList<DiaryEntry>>() { }.getType();
+	private static final Type INDEX_LIST_V4_TYPE = new TypeToken<ArrayList<DiaryIndexEntry>>() { }.getType();
+	private static final Comparator<DiaryIndexEntry> ARRIVAL_TIME_COMPARATOR =
+			(i1, i2) -> Long.compare(i1.getArrivalTime(), i2.getArrivalTime());
 
 
 	private static DiaryStorage instance;
 
-	private SharedPreferences sharedPreferences;
+	private PersistenceWriter persistenceWriter;
 	private final Gson gson = new Gson();
 
+	private ArrayList<DiaryIndexEntry> index;
+	private final HashMap<Long, DiaryIndexEntry> indexById = new HashMap<>();
+	private final HashMap<Long, DiaryEntry> entryCache = new HashMap<>();
+	private ArrayList<DiaryIndexEntry> hiddenCheckInWindows;
+	private long checkInWindowsTrackedSince;
+	private long version = 0;
+	private Snapshot snapshot;
+
 	private DiaryStorage(Context context) {
 		try {
 			String KEY_ALIAS = MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC);
-			sharedPreferences = EncryptedSharedPreferences.create(KEY_DIARY_STORE,
+			SharedPreferences sharedPreferences = EncryptedSharedPreferences.create(KEY_DIARY_STORE,
 					KEY_ALIAS,
 					context,
 					EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
 					EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM);
+			persistenceWriter = new PersistenceWriter(sharedPreferences);
 		} catch (GeneralSecurityException | IOException ex) {
 			ex.printStackTrace();
 		}
+		PersistenceWriter.flushWhenProcessStops(this::flush);
 	}
 
 	public static synchronized DiaryStorage getInstance(Context context) {
@@ -55,85 +86,289 @@ public class DiaryStorage {
 		return instance;
 	}
 
-	public boolean addEntry(DiaryEntry diaryEntry) {
-		List<DiaryEntry> diaryEntries = getEntries();
-		if (hasExposureWithId(diaryEntry.getId())) return false;
-		diaryEntries.add(diaryEntry);
-		saveToPrefs(diaryEntries);
+	public synchronized boolean addEntry(DiaryEntry diaryEntry) {
+		loadIfNecessary();
+		if (indexById.containsKey(diaryEntry.getId())) return false;
+		putEntry(diaryEntry);
+		addToIndex(DiaryIndexEntry.fromDiaryEntry(diaryEntry));
+		putIndex();
+		entryCache.put(diaryEntry.getId(), diaryEntry.copy());
+		version++;
 		return true;
 	}
 
-	public boolean updateEntry(DiaryEntry newDiaryEntry) {
-		List<DiaryEntry> diaryEntries = getEntries();
-		DiaryEntry oldDiaryEntry = getDiaryEntryWithId(diaryEntries, newDiaryEntry.getId());
-		if (oldDiaryEntry == null) return false;
-		diaryEntries.remove(oldDiaryEntry);
-		diaryEntries.add(newDiaryEntry);
-		saveToPrefs(diaryEntries);
+	public synchronized boolean updateEntry(DiaryEntry newDiaryEntry) {
+		loadIfNecessary();
+		DiaryIndexEntry oldIndexEntry = indexById.get(newDiaryEntry.getId());
+		if (oldIndexEntry == null) return false;
+		putEntry(newDiaryEntry);
+		removeFromIndex(oldIndexEntry);
+		addToIndex(DiaryIndexEntry.fromDiaryEntry(newDiaryEntry));
+		putIndex();
+		entryCache.put(newDiaryEntry.getId(), newDiaryEntry.copy());
+		version++;
 		return true;
 	}
 
-	public boolean removeEntry(long id) {
-		List<DiaryEntry> diaryEntries = getEntries();
-		DiaryEntry diaryEntry = getDiaryEntryWithId(diaryEntries, id);
-		if (diaryEntry == null) return false;
-		diaryEntries.remove(diaryEntry);
-		saveToPrefs(diaryEntries);
+	public synchronized boolean removeEntry(long id) {
+		loadIfNecessary();
+		DiaryIndexEntry indexEntry = indexById.get(id);
+		if (indexEntry == null) return false;
+		removeFromIndex(indexEntry);
+		hiddenCheckInWindows.add(indexEntry);
+		persistenceWriter.remove(getEntryKey(id));
+		putIndex();
+		putHiddenCheckInWindows();
+		entryCache.remove(id);
+		version++;
 		return true;
 	}
 
-	public boolean hasExposureWithId(long id) {
-		return getDiaryEntryWithId(id) != null;
+	public synchronized boolean hasExposureWithId(long id) {
+		loadIfNecessary();
+		return indexById.containsKey(id);
+	}
+
+	/**
+	 * @return a copy of the entry with the given id, which may be modified freely, or null if there is no such entry
+	 */
+	public synchronized DiaryEntry getDiaryEntryWithId(long id) {
+		loadIfNecessary();
+		DiaryEntry diaryEntry = entryCache.get(id);
+		return diaryEntry == null ? null : diaryEntry.copy();
 	}
 
-	public DiaryEntry getDiaryEntryWithId(long id) {
-		return getDiaryEntryWithId(getEntries(), id);
+	/**
+	 * @return copies of all diary entries, ordered by ascending arrival time
+	 */
+	public synchronized List<DiaryEntry> getEntries() {
+		loadIfNecessary();
+		ArrayList<DiaryEntry> diaryEntries = new ArrayList<>(index.size());
+		for (DiaryIndexEntry indexEntry : index) {
+			DiaryEntry diaryEntry = entryCache.get(indexEntry.getId());
+			if (diaryEntry != null) diaryEntries.add(diaryEntry.copy());
+		}
+		return diaryEntries;
 	}
 
-	private DiaryEntry getDiaryEntryWithId(List<DiaryEntry> diaryEntries, long id) {
-		for (DiaryEntry exposure : diaryEntries) {
-			if (exposure.getId() == id) {
-				return exposure;
+	/**
+	 * @return a read-only snapshot of the diary. The same instance is returned until the diary is modified again.
+	 */
+	public synchronized Snapshot getSnapshot() {
+		loadIfNecessary();
+		if (snapshot == null || snapshot.getVersion() != version) {
+			ArrayList<DiaryEntry> diaryEntries = new ArrayList<>(index.size());
+			HashMap<Long, DiaryEntry> diaryEntriesById = new HashMap<>();
+			for (DiaryIndexEntry indexEntry : index) {
+				DiaryEntry diaryEntry = entryCache.get(indexEntry.getId());
+				if (diaryEntry == null) continue;
+				DiaryEntry diaryEntryCopy = diaryEntry.copy();
+				diaryEntries.add(diaryEntryCopy);
+				diaryEntriesById.put(diaryEntryCopy.getId(), diaryEntryCopy);
 			}
+			snapshot = new Snapshot(version, Collections.unmodifiableList(diaryEntries),
+					Collections.unmodifiableMap(diaryEntriesById));
 		}
-		return null;
+		return snapshot;
 	}
 
-	public List<DiaryEntry> getEntries() {
-		migrateDiaryEntriesIfNecessary();
-		return gson.fromJson(sharedPreferences.getString(KEY_DIARY_ENTRIES_V3, "[]"), EXPOSURE_LIST_V3_TYPE);
+	public synchronized long getVersion() {
+		return version;
 	}
 
-	private void migrateDiaryEntriesIfNecessary() {
-		if (!sharedPreferences.contains(KEY_DIARY_ENTRIES_V2)) return;
-		ArrayList<DiaryEntryDeprecatedV2> oldDiaryEntries =
-				gson.fromJson(sharedPreferences.getString(KEY_DIARY_ENTRIES_V2, "[]"), EXPOSURE_LIST_V2_TYPE);
-		ArrayList<DiaryEntry> diaryEntries = new ArrayList<>();
-		for (DiaryEntryDeprecatedV2 oldDiaryEntry : oldDiaryEntries) {
-			diaryEntries.add(oldDiaryEntry.toDiaryEntry());
-		}
-		saveToPrefs(diaryEntries);
-		sharedPreferences.edit().remove(KEY_DIARY_ENTRIES_V2).apply();
+	/**
+	 * The check-ins stored in the CrowdNotifier SDK can not be read, but every one of them has a diary entry. Entries removed
+	 * from the diary are still kept as hidden windows, so this returns the time windows of all stored check-ins that were
+	 * made since {@link #getCheckInWindowsTrackedSince()}.
+	 * @return the time windows of all visible and hidden diary entries
+	 */
+	public synchronized List<DiaryIndexEntry> getCheckInWindows() {
+		loadIfNecessary();
+		ArrayList<DiaryIndexEntry> checkInWindows = new ArrayList<>(index.size() + hiddenCheckInWindows.size());
+		checkInWindows.addAll(index);
+		checkInWindows.addAll(hiddenCheckInWindows);
+		return checkInWindows;
 	}
 
-	public void removeEntriesBefore(int maxDaysToKeep) {
-		List<DiaryEntry> exposureList = getEntries();
+	/**
+	 * @return the time since which the windows of hidden diary entries are tracked. Entries hidden before this time are missing
+	 * from {@link #getCheckInWindows()}.
+	 */
+	public synchronized long getCheckInWindowsTrackedSince() {
+		loadIfNecessary();
+		return checkInWindowsTrackedSince;
+	}
+
+	/**
+	 * Synchronously persists all pending changes, see {@link PersistenceWriter#flush()}
+	 */
+	public void flush() {
+		if (persistenceWriter != null) persistenceWriter.flush();
+	}
+
+	public synchronized void removeEntriesBefore(int maxDaysToKeep) {
+		loadIfNecessary();
 		DayDate lastDateToKeep = new DayDate().subtractDays(maxDaysToKeep);
-		Iterator<DiaryEntry> iterator = exposureList.iterator();
+		boolean removedEntries = false;
+		Iterator<DiaryIndexEntry> iterator = index.iterator();
 		while (iterator.hasNext()) {
-			if (new DayDate(iterator.next().getDepartureTime()).isBefore(lastDateToKeep)) {
+			DiaryIndexEntry indexEntry = iterator.next();
+			if (new DayDate(indexEntry.getDepartureTime()).isBefore(lastDateToKeep)) {
 				iterator.remove();
+				indexById.remove(indexEntry.getId());
+				entryCache.remove(indexEntry.getId());
+				persistenceWriter.remove(getEntryKey(indexEntry.getId()));
+				removedEntries = true;
+			}
+		}
+		Iterator<DiaryIndexEntry> hiddenIterator = hiddenCheckInWindows.iterator();
+		boolean removedHiddenWindows = false;
+		while (hiddenIterator.hasNext()) {
+			if (new DayDate(hiddenIterator.next().getDepartureTime()).isBefore(lastDateToKeep)) {
+				hiddenIterator.remove();
+				removedHiddenWindows = true;
+			}
+		}
+		if (removedHiddenWindows) putHiddenCheckInWindows();
+		if (!removedEntries) return;
+		putIndex();
+		version++;
+	}
+
+	public synchronized void clear() {
+		loadIfNecessary();
+		for (DiaryIndexEntry indexEntry : index) {
+			persistenceWriter.remove(getEntryKey(indexEntry.getId()));
+		}
+		hiddenCheckInWindows.addAll(index);
+		putHiddenCheckInWindows();
+		index.clear();
+		indexById.clear();
+		entryCache.clear();
+		putIndex();
+		version++;
+	}
+
+	private void loadIfNecessary() {
+		if (index != null) return;
+		long loadStart = Metrics.beginSpan(Metrics.Span.DIARY_LOAD);
+		try {
+			index = gson.fromJson(persistenceWriter.getString(KEY_DIARY_INDEX_V4, "[]"), INDEX_LIST_V4_TYPE);
+			for (DiaryIndexEntry indexEntry : index) {
+				indexById.put(indexEntry.getId(), indexEntry);
+				DiaryEntry diaryEntry = readEntry(indexEntry.getId());
+				if (diaryEntry != null) entryCache.put(indexEntry.getId(), diaryEntry);
+			}
+			hiddenCheckInWindows =
+					gson.fromJson(persistenceWriter.getString(KEY_HIDDEN_CHECK_IN_WINDOWS_V4, "[]"), INDEX_LIST_V4_TYPE);
+			checkInWindowsTrackedSince = persistenceWriter.getLong(KEY_CHECK_IN_WINDOWS_TRACKED_SINCE, 0);
+			if (checkInWindowsTrackedSince == 0) {
+				checkInWindowsTrackedSince = System.currentTimeMillis();
+				persistenceWriter.putLong(KEY_CHECK_IN_WINDOWS_TRACKED_SINCE, checkInWindowsTrackedSince);
+			}
+			migrateDiaryEntriesIfNecessary();
+		} finally {
+			Metrics.endSpan(Metrics.Span.DIARY_LOAD, loadStart);
+		}
+	}
+
+	private void migrateDiaryEntriesIfNecessary() {
+		if (persistenceWriter.contains(KEY_DIARY_ENTRIES_V2)) {
+			ArrayList<DiaryEntryDeprecatedV2> oldDiaryEntries =
+					gson.fromJson(persistenceWriter.getString(KEY_DIARY_ENTRIES_V2, "[]"), EXPOSURE_LIST_V2_TYPE);
+			ArrayList<DiaryEntry> diaryEntries = new ArrayList<>();
+			for (DiaryEntryDeprecatedV2 oldDiaryEntry : oldDiaryEntries) {
+				diaryEntries.add(oldDiaryEntry.toDiaryEntry());
 			}
+			migrateDiaryEntries(diaryEntries);
+		} else if (persistenceWriter.contains(KEY_DIARY_ENTRIES_V3)) {
+			ArrayList<DiaryEntry> diaryEntries =
+					gson.fromJson(persistenceWriter.getString(KEY_DIARY_ENTRIES_V3, "[]"), EXPOSURE_LIST_V3_TYPE);
+			migrateDiaryEntries(diaryEntries);
 		}
-		saveToPrefs(exposureList);
 	}
 
-	private void saveToPrefs(List<DiaryEntry> diaryEntries) {
-		sharedPreferences.edit().putString(KEY_DIARY_ENTRIES_V3, gson.toJson(diaryEntries)).apply();
+	private void migrateDiaryEntries(List<DiaryEntry> diaryEntries) {
+		for (DiaryEntry diaryEntry : diaryEntries) {
+			if (indexById.containsKey(diaryEntry.getId())) continue;
+			putEntry(diaryEntry);
+			addToIndex(DiaryIndexEntry.fromDiaryEntry(diaryEntry));
+			entryCache.put(diaryEntry.getId(), diaryEntry);
+		}
+		putIndex();
+		persistenceWriter.remove(KEY_DIARY_ENTRIES_V2);
+		persistenceWriter.remove(KEY_DIARY_ENTRIES_V3);
+	}
+
+	private void addToIndex(DiaryIndexEntry indexEntry) {
+		int position = Collections.binarySearch(index, indexEntry, ARRIVAL_TIME_COMPARATOR);
+		if (position < 0) position = -position - 1;
+		index.add(position, indexEntry);
+		indexById.put(indexEntry.getId(), indexEntry);
+	}
+
+	private void removeFromIndex(DiaryIndexEntry indexEntry) {
+		index.remove(indexEntry);
+		indexById.remove(indexEntry.getId());
+	}
+
+	private DiaryEntry readEntry(long id) {
+		return gson.fromJson(persistenceWriter.getString(getEntryKey(id), null), DiaryEntry.class);
+	}
+
+	private void putEntry(DiaryEntry diaryEntry) {
+		long writeStart = Metrics.beginSpan(Metrics.Span.DIARY_WRITE);
+		persistenceWriter.putString(getEntryKey(diaryEntry.getId()), gson.toJson(diaryEntry));
+		Metrics.endSpan(Metrics.Span.DIARY_WRITE, writeStart);
+	}
+
+	private void putIndex() {
+		long writeStart = Metrics.beginSpan(Metrics.Span.DIARY_WRITE);
+		persistenceWriter.putString(KEY_DIARY_INDEX_V4, gson.toJson(index));
+		Metrics.endSpan(Metrics.Span.DIARY_WRITE, writeStart);
+	}
+
+	private void putHiddenCheckInWindows() {
+		long writeStart = Metrics.beginSpan(Metrics.Span.DIARY_WRITE);
+		persistenceWriter.putString(KEY_HIDDEN_CHECK_IN_WINDOWS_V4, gson.toJson(hiddenCheckInWindows));
+		Metrics.endSpan(Metrics.Span.DIARY_WRITE, writeStart);
 	}
 
-	public void clear() {
-		saveToPrefs(new ArrayList<>());
+	private static String getEntryKey(long id) {
+		return KEY_PREFIX_DIARY_ENTRY_V4 + id;
+	}
+
+
+	/**
+	 * Immutable view of the diary at a given version. The contained entries are shared and must not be modified.
+	 */
+	public static class Snapshot {
+
+		private final long version;
+		private final List<DiaryEntry> entries;
+		private final Map<Long, DiaryEntry> entriesById;
+
+		private Snapshot(long version, List<DiaryEntry> entries, Map<Long, DiaryEntry> entriesById) {
+			this.version = version;
+			this.entries = entries;
+			this.entriesById = entriesById;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return all diary entries, ordered by ascending arrival time
+		 */
+		public List<DiaryEntry> getEntries() {
+			return entries;
+		}
+
+		public DiaryEntry getDiaryEntryWithId(long id) {
+			return entriesById.get(id);
+		}
+
 	}
 
 }
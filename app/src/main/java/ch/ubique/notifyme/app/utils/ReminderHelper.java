@@ -101,6 +101,8 @@ public class ReminderHelper extends BroadcastReceiver {
 			NotificationHelper.getInstance(context).showReminderNotification();
 		} else if (ACTION_AUTO_CHECKOUT.equals(intent.getAction())) {
 			autoCheckoutIfNecessary(context, checkInState);
+			Storage.getInstance(context).flush();
+			DiaryStorage.getInstance(context).flush();
 		}
 	}
 
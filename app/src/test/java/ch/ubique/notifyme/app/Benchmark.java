@@ -0,0 +1,87 @@
+package ch.ubique.notifyme.app;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.google.gson.GsonBuilder;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Minimal harness for the JVM benchmarks, which only run with -Pbenchmark, e.g.
+ * ./gradlew :app:testDevDebugUnitTest -Pbenchmark --tests '*Benchmark'. Every operation is run for a few warm-up rounds
+ * before it is measured, the results are printed and written as JSON to build/benchmarks/[name].json, so they can be
+ * compared between releases.
+ */
+public class Benchmark {
+
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 10;
+
+	private final String name;
+	private final ArrayList<Result> results = new ArrayList<>();
+
+	public Benchmark(String name) {
+		assumeTrue("Benchmarks only run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+		this.name = name;
+	}
+
+	/**
+	 * @param size the number of items processed by one run of the operation
+	 */
+	public void measure(String operation, int size, Operation runnable) throws Exception {
+		long checksum = 0;
+		long[] durations = new long[MEASURED_ROUNDS];
+		for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+			long start = System.nanoTime();
+			checksum += runnable.run();
+			long duration = System.nanoTime() - start;
+			if (round >= WARMUP_ROUNDS) durations[round - WARMUP_ROUNDS] = duration;
+		}
+		Arrays.sort(durations);
+		Result result = new Result(operation, size, durations[MEASURED_ROUNDS / 2], durations[0], checksum);
+		results.add(result);
+		System.out.println(String.format(Locale.US, "%s %s(%d): median %.3fms, min %.3fms, %.0fns per item", name,
+				operation, size, result.medianNanos / 1e6, result.minNanos / 1e6, result.medianNanos / (double) size));
+	}
+
+	public void writeResults() throws IOException {
+		File directory = new File("build/benchmarks");
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Could not create " + directory);
+		try (Writer writer = new FileWriter(new File(directory, name + ".json"))) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(results, writer);
+		}
+	}
+
+	public interface Operation {
+		/**
+		 * @return a checksum of the results, which keeps them from being optimized away
+		 */
+		long run() throws Exception;
+
+	}
+
+
+	private static class Result {
+		private final String operation;
+		private final int size;
+		private final long medianNanos;
+		private final long minNanos;
+		private final long checksum;
+
+		private Result(String operation, int size, long medianNanos, long minNanos, long checksum) {
+			this.operation = operation;
+			this.size = size;
+			this.medianNanos = medianNanos;
+			this.minNanos = minNanos;
+			this.checksum = checksum;
+		}
+
+	}
+
+}
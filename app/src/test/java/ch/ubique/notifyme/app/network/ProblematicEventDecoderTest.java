@@ -0,0 +1,144 @@
+package ch.ubique.notifyme.app.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import org.crowdnotifier.android.sdk.model.ProblematicEventInfo;
+import org.junit.Test;
+
+import ch.ubique.notifyme.app.model.Proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ProblematicEventDecoderTest {
+
+	private final Random random = new Random(42);
+
+	@Test
+	public void decodesLikeParseFrom() throws IOException {
+		Proto.ProblematicEventWrapper.Builder wrapper = Proto.ProblematicEventWrapper.newBuilder().setVersion(3);
+		for (int i = 0; i < 100; i++) {
+			wrapper.addEvents(createEvent(i));
+		}
+		assertDecodesLikeParseFrom(wrapper.build().toByteArray());
+	}
+
+	@Test
+	public void decodesEmptyBytesAndDefaultValues() throws IOException {
+		Proto.ProblematicEventWrapper wrapper = Proto.ProblematicEventWrapper.newBuilder()
+				.addEvents(Proto.ProblematicEvent.newBuilder().build())
+				.addEvents(Proto.ProblematicEvent.newBuilder().setIdentity(ByteString.EMPTY).setStartTime(-1).build())
+				.build();
+		assertDecodesLikeParseFrom(wrapper.toByteArray());
+	}
+
+	@Test
+	public void decodesEmptyWrapper() throws IOException {
+		assertEquals(0, decode(new byte[0]).size());
+		assertDecodesLikeParseFrom(Proto.ProblematicEventWrapper.newBuilder().setVersion(3).build().toByteArray());
+	}
+
+	@Test
+	public void skipsUnknownFields() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+		output.writeInt32(Proto.ProblematicEventWrapper.VERSION_FIELD_NUMBER, 3);
+		output.writeString(15, "unknown wrapper field");
+		for (int i = 0; i < 3; i++) {
+			byte[] event = withUnknownFields(createEvent(i).toByteArray());
+			output.writeByteArray(Proto.ProblematicEventWrapper.EVENTS_FIELD_NUMBER, event);
+			output.writeFixed64(16, i);
+		}
+		output.flush();
+		assertDecodesLikeParseFrom(bytes.toByteArray());
+	}
+
+	@Test
+	public void skipsRestOfEventAfterEndGroupTag() throws IOException {
+		Proto.ProblematicEvent first = createEvent(1);
+		Proto.ProblematicEvent second = createEvent(2);
+
+		ByteArrayOutputStream eventBytes = new ByteArrayOutputStream();
+		CodedOutputStream eventOutput = CodedOutputStream.newInstance(eventBytes);
+		eventOutput.writeByteArray(Proto.ProblematicEvent.IDENTITY_FIELD_NUMBER, first.getIdentity().toByteArray());
+		eventOutput.writeTag(9, WireFormat.WIRETYPE_END_GROUP);
+		// Would be read as an events field of the wrapper if the rest of the event was not skipped
+		eventOutput.writeByteArray(Proto.ProblematicEventWrapper.EVENTS_FIELD_NUMBER, second.toByteArray());
+		eventOutput.flush();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+		output.writeByteArray(Proto.ProblematicEventWrapper.EVENTS_FIELD_NUMBER, eventBytes.toByteArray());
+		output.writeByteArray(Proto.ProblematicEventWrapper.EVENTS_FIELD_NUMBER, second.toByteArray());
+		output.flush();
+
+		List<ProblematicEventInfo> decoded = decode(bytes.toByteArray());
+		assertEquals(2, decoded.size());
+		assertArrayEquals(first.getIdentity().toByteArray(), decoded.get(0).getIdentity());
+		assertEquals(0, decoded.get(0).getStartTimestamp());
+		assertEvent(second, decoded.get(1));
+	}
+
+	private Proto.ProblematicEvent createEvent(int index) {
+		return Proto.ProblematicEvent.newBuilder()
+				.setVersion(3)
+				.setIdentity(randomBytes(32))
+				.setSecretKeyForIdentity(randomBytes(64))
+				.setStartTime(1_600_000_000_000L + index * 3_600_000L)
+				.setEndTime(1_600_000_000_000L + (index + 1) * 3_600_000L)
+				.setEncryptedAssociatedData(randomBytes(index % 5 == 0 ? 0 : 100 + index))
+				.setCipherTextNonce(randomBytes(24))
+				.build();
+	}
+
+	private byte[] withUnknownFields(byte[] event) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+		output.writeUInt64(20, 12345);
+		output.writeByteArray(21, new byte[] { 1, 2, 3 });
+		output.writeFixed32(22, 7);
+		output.flush();
+		bytes.write(event);
+		return bytes.toByteArray();
+	}
+
+	private ByteString randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return ByteString.copyFrom(bytes);
+	}
+
+	private void assertDecodesLikeParseFrom(byte[] bytes) throws IOException {
+		Proto.ProblematicEventWrapper expected = Proto.ProblematicEventWrapper.parseFrom(bytes);
+		List<ProblematicEventInfo> decoded = decode(bytes);
+		assertEquals(expected.getEventsCount(), decoded.size());
+		for (int i = 0; i < decoded.size(); i++) {
+			assertEvent(expected.getEvents(i), decoded.get(i));
+		}
+	}
+
+	private static void assertEvent(Proto.ProblematicEvent expected, ProblematicEventInfo actual) {
+		assertArrayEquals(expected.getIdentity().toByteArray(), actual.getIdentity());
+		assertArrayEquals(expected.getSecretKeyForIdentity().toByteArray(), actual.getSecretKeyForIdentity());
+		assertEquals(expected.getStartTime(), actual.getStartTimestamp());
+		assertEquals(expected.getEndTime(), actual.getEndTimestamp());
+		assertArrayEquals(expected.getEncryptedAssociatedData().toByteArray(), actual.getEncryptedAssociatedData());
+		assertArrayEquals(expected.getCipherTextNonce().toByteArray(), actual.getCipherTextNonce());
+	}
+
+	private static List<ProblematicEventInfo> decode(byte[] bytes) throws IOException {
+		ArrayList<ProblematicEventInfo> decoded = new ArrayList<>();
+		ProblematicEventDecoder.decode(new ByteArrayInputStream(bytes), decoded::add);
+		return decoded;
+	}
+
+}
@@ -0,0 +1,89 @@
+package ch.ubique.notifyme.app.network;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.google.protobuf.ByteString;
+
+import org.crowdnotifier.android.sdk.model.ProblematicEventInfo;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.ubique.notifyme.app.Benchmark;
+import ch.ubique.notifyme.app.model.Proto;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares parsing a trace key response with parseFrom and converting it to ProblematicEventInfos with the streaming
+ * {@link ProblematicEventDecoder}, see {@link Benchmark} for how to run it
+ */
+public class ProblematicEventParsingBenchmark {
+
+	private static final int[] SIZES = new int[] { 1000, 10000, 100000 };
+	private static final int ASSOCIATED_DATA_SIZE = 100;
+
+	private static Benchmark benchmark;
+
+	private final Random random = new Random(42);
+
+	@BeforeClass
+	public static void setUpClass() {
+		benchmark = new Benchmark("ProblematicEventParsing");
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		if (benchmark != null) benchmark.writeResults();
+	}
+
+	@Test
+	public void parsing() throws Exception {
+		for (int size : SIZES) {
+			byte[] payload = createPayload(size);
+
+			benchmark.measure("parseFrom", size, () -> {
+				ArrayList<ProblematicEventInfo> events = new ArrayList<>();
+				for (Proto.ProblematicEvent event : Proto.ProblematicEventWrapper.parseFrom(payload).getEventsList()) {
+					events.add(new ProblematicEventInfo(event.getIdentity().toByteArray(),
+							event.getSecretKeyForIdentity().toByteArray(), event.getStartTime(), event.getEndTime(),
+							event.getEncryptedAssociatedData().toByteArray(), event.getCipherTextNonce().toByteArray()));
+				}
+				assertEquals(size, events.size());
+				return events.get(size - 1).getStartTimestamp();
+			});
+
+			benchmark.measure("ProblematicEventDecoder", size, () -> {
+				ArrayList<ProblematicEventInfo> events = new ArrayList<>();
+				ProblematicEventDecoder.decode(new ByteArrayInputStream(payload), events::add);
+				assertEquals(size, events.size());
+				return events.get(size - 1).getStartTimestamp();
+			});
+		}
+	}
+
+	private byte[] createPayload(int size) {
+		Proto.ProblematicEventWrapper.Builder wrapper = Proto.ProblematicEventWrapper.newBuilder().setVersion(3);
+		for (int i = 0; i < size; i++) {
+			wrapper.addEvents(Proto.ProblematicEvent.newBuilder()
+					.setVersion(3)
+					.setIdentity(randomBytes(32))
+					.setSecretKeyForIdentity(randomBytes(64))
+					.setStartTime(1_600_000_000_000L + i * 3_600_000L)
+					.setEndTime(1_600_000_000_000L + (i + 1) * 3_600_000L)
+					.setEncryptedAssociatedData(randomBytes(ASSOCIATED_DATA_SIZE))
+					.setCipherTextNonce(randomBytes(24))
+					.build());
+		}
+		return wrapper.build().toByteArray();
+	}
+
+	private ByteString randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return ByteString.copyFrom(bytes);
+	}
+
+}
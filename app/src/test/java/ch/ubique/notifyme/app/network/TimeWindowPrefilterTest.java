@@ -0,0 +1,133 @@
+package ch.ubique.notifyme.app.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.crowdnotifier.android.sdk.model.ProblematicEventInfo;
+import org.junit.Test;
+
+import ch.ubique.notifyme.app.model.DiaryIndexEntry;
+
+import static ch.ubique.notifyme.app.network.TimeWindowPrefilter.WINDOW_PADDING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeWindowPrefilterTest {
+
+	private static final long T0 = 1_600_000_000_000L;
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	@Test
+	public void emptyIndexDropsEverything() {
+		TimeWindowPrefilter prefilter = TimeWindowPrefilter.create(Collections.emptyList(), true);
+		assertFalse(prefilter.mightMatch(event(T0, T0 + HOUR)));
+		assertEquals(1, prefilter.getPrunedCount());
+	}
+
+	@Test
+	public void disabledLetsEverythingPass() {
+		TimeWindowPrefilter prefilter = TimeWindowPrefilter.create(Collections.emptyList(), false);
+		assertTrue(prefilter.mightMatch(event(T0, T0 + HOUR)));
+		prefilter = TimeWindowPrefilter.create(windows(T0, T0 + HOUR), false);
+		assertTrue(prefilter.mightMatch(event(T0 + 100 * HOUR, T0 + 101 * HOUR)));
+		assertEquals(0, prefilter.getPrunedCount());
+	}
+
+	@Test
+	public void implausibleTimestampsPass() {
+		TimeWindowPrefilter prefilter = TimeWindowPrefilter.create(windows(T0, T0 + HOUR), true);
+		assertTrue(prefilter.mightMatch(event(1000, 2000)));
+		assertTrue(prefilter.mightMatch(event(0, 0)));
+	}
+
+	@Test
+	public void boundariesAreInclusive() {
+		TimeWindowPrefilter prefilter = TimeWindowPrefilter.create(windows(T0, T0 + HOUR), true);
+		long start = T0 - WINDOW_PADDING;
+		long end = T0 + HOUR + WINDOW_PADDING;
+		assertTrue(prefilter.mightMatch(event(start - HOUR, start)));
+		assertFalse(prefilter.mightMatch(event(start - HOUR, start - 1)));
+		assertTrue(prefilter.mightMatch(event(end, end + HOUR)));
+		assertFalse(prefilter.mightMatch(event(end + 1, end + HOUR)));
+		assertTrue(prefilter.mightMatch(event(start - HOUR, end + HOUR)));
+		assertTrue(prefilter.mightMatch(event(T0 + 1, T0 + 2)));
+	}
+
+	@Test
+	public void adjacentWindowsAreMerged() {
+		// The padded windows touch exactly, so there is no gap between them
+		long secondArrival = T0 + HOUR + 2 * WINDOW_PADDING;
+		TimeWindowPrefilter prefilter =
+				TimeWindowPrefilter.create(windows(T0, T0 + HOUR, secondArrival, secondArrival + HOUR), true);
+		long joint = T0 + HOUR + WINDOW_PADDING;
+		assertTrue(prefilter.mightMatch(event(joint, joint)));
+		assertTrue(prefilter.mightMatch(event(joint - 1, joint + 1)));
+	}
+
+	@Test
+	public void gapsBetweenWindowsAreDropped() {
+		long secondArrival = T0 + 10 * HOUR + 2 * WINDOW_PADDING;
+		TimeWindowPrefilter prefilter =
+				TimeWindowPrefilter.create(windows(secondArrival, secondArrival + HOUR, T0, T0 + HOUR), true);
+		long gapStart = T0 + HOUR + WINDOW_PADDING + 1;
+		long gapEnd = secondArrival - WINDOW_PADDING - 1;
+		assertFalse(prefilter.mightMatch(event(gapStart, gapEnd)));
+		assertTrue(prefilter.mightMatch(event(gapStart, gapEnd + 1)));
+		assertTrue(prefilter.mightMatch(event(gapStart - 1, gapEnd)));
+	}
+
+	@Test
+	public void nestedWindowDoesNotShortenTheMergedWindow() {
+		TimeWindowPrefilter prefilter =
+				TimeWindowPrefilter.create(windows(T0, T0 + 10 * HOUR, T0 + HOUR, T0 + 2 * HOUR), true);
+		assertTrue(prefilter.mightMatch(event(T0 + 8 * HOUR, T0 + 9 * HOUR)));
+		assertTrue(prefilter.mightMatch(event(T0 + 10 * HOUR + WINDOW_PADDING, T0 + 11 * HOUR + WINDOW_PADDING)));
+	}
+
+	@Test
+	public void searchFindsEveryWindowOfALargeIndex() {
+		ArrayList<Long> times = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			long arrival = T0 + i * 24 * HOUR;
+			times.add(arrival);
+			times.add(arrival + HOUR);
+		}
+		long[] bounds = new long[times.size()];
+		for (int i = 0; i < bounds.length; i++) bounds[i] = times.get(i);
+		TimeWindowPrefilter prefilter = TimeWindowPrefilter.create(windows(bounds), true);
+		for (int i = 0; i < 100; i++) {
+			long arrival = T0 + i * 24 * HOUR;
+			assertTrue(prefilter.mightMatch(event(arrival, arrival + HOUR)));
+			assertFalse(prefilter.mightMatch(event(arrival + 10 * HOUR, arrival + 11 * HOUR)));
+		}
+	}
+
+	@Test
+	public void filterKeepsOrderAndCounts() {
+		TimeWindowPrefilter prefilter = TimeWindowPrefilter.create(windows(T0, T0 + HOUR), true);
+		ProblematicEventInfo first = event(T0, T0 + HOUR);
+		ProblematicEventInfo dropped = event(T0 + 100 * HOUR, T0 + 101 * HOUR);
+		ProblematicEventInfo second = event(T0 - HOUR, T0);
+		List<ProblematicEventInfo> candidates = prefilter.filter(Arrays.asList(first, dropped, second));
+		assertEquals(Arrays.asList(first, second), candidates);
+		assertEquals(3, prefilter.getCheckedCount());
+		assertEquals(1, prefilter.getPrunedCount());
+	}
+
+	private static List<DiaryIndexEntry> windows(long... bounds) {
+		ArrayList<DiaryIndexEntry> windows = new ArrayList<>();
+		for (int i = 0; i < bounds.length; i += 2) {
+			windows.add(new DiaryIndexEntry(i, bounds[i], bounds[i + 1]));
+		}
+		return windows;
+	}
+
+	private static ProblematicEventInfo event(long start, long end) {
+		return new ProblematicEventInfo(new byte[0], new byte[0], start, end, new byte[0], new byte[0]);
+	}
+
+}
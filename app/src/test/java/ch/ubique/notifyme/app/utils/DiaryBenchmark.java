@@ -0,0 +1,126 @@
+package ch.ubique.notifyme.app.utils;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.crowdnotifier.android.sdk.model.VenueInfo;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.ubique.notifyme.app.Benchmark;
+import ch.ubique.notifyme.app.model.DiaryEntry;
+import ch.ubique.notifyme.app.model.DiaryIndexEntry;
+import ch.ubique.notifyme.app.model.Proto;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the Gson (de)serialization of the diary records and index as done by {@link DiaryStorage}, and the parsing of
+ * the location data of every entry, which the VenueInfoExtensions cache avoids on the device. See {@link Benchmark} for
+ * how to run it.
+ */
+public class DiaryBenchmark {
+
+	private static final int[] SIZES = new int[] { 1000, 10000, 100000 };
+	private static final Type INDEX_LIST_TYPE = new TypeToken<ArrayList<DiaryIndexEntry>>() { }.getType();
+	private static final long ONE_HOUR = 60 * 60 * 1000;
+
+	private static Benchmark benchmark;
+
+	private final Random random = new Random(42);
+	private final Gson gson = new Gson();
+
+	@BeforeClass
+	public static void setUpClass() {
+		benchmark = new Benchmark("Diary");
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		if (benchmark != null) benchmark.writeResults();
+	}
+
+	@Test
+	public void entries() throws Exception {
+		for (int size : SIZES) {
+			List<DiaryEntry> entries = createEntries(size);
+			ArrayList<String> records = new ArrayList<>(size);
+			for (DiaryEntry entry : entries) records.add(gson.toJson(entry));
+
+			benchmark.measure("serializeEntries", size, () -> {
+				long length = 0;
+				for (DiaryEntry entry : entries) length += gson.toJson(entry).length();
+				return length;
+			});
+
+			benchmark.measure("deserializeEntries", size, () -> {
+				long checksum = 0;
+				for (String record : records) checksum += gson.fromJson(record, DiaryEntry.class).getArrivalTime();
+				return checksum;
+			});
+		}
+	}
+
+	@Test
+	public void index() throws Exception {
+		for (int size : SIZES) {
+			ArrayList<DiaryIndexEntry> index = new ArrayList<>(size);
+			for (DiaryEntry entry : createEntries(size)) index.add(DiaryIndexEntry.fromDiaryEntry(entry));
+			String json = gson.toJson(index);
+
+			benchmark.measure("serializeIndex", size, () -> gson.toJson(index).length());
+
+			benchmark.measure("deserializeIndex", size, () -> {
+				List<DiaryIndexEntry> parsed = gson.fromJson(json, INDEX_LIST_TYPE);
+				assertEquals(size, parsed.size());
+				return parsed.get(size - 1).getArrivalTime();
+			});
+		}
+	}
+
+	@Test
+	public void locationData() throws Exception {
+		for (int size : SIZES) {
+			List<DiaryEntry> entries = createEntries(size);
+
+			benchmark.measure("parseLocationData", size, () -> {
+				long checksum = 0;
+				for (DiaryEntry entry : entries) {
+					checksum += Proto.NotifyMeLocationData.parseFrom(entry.getVenueInfo().getCountryData()).getRoom().length();
+				}
+				return checksum;
+			});
+		}
+	}
+
+	private List<DiaryEntry> createEntries(int size) {
+		ArrayList<DiaryEntry> entries = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			long arrivalTime = 1_600_000_000_000L + i * ONE_HOUR;
+			byte[] countryData = Proto.NotifyMeLocationData.newBuilder()
+					.setVersion(2)
+					.setRoom("Room " + i % 20)
+					.setType(Proto.VenueType.MEETING_ROOM)
+					.build()
+					.toByteArray();
+			VenueInfo venueInfo = new VenueInfo("Venue " + i, "Street " + i % 100 + ", 8000 Zurich", randomBytes(32),
+					randomBytes(96), randomBytes(32), randomBytes(32), arrivalTime - ONE_HOUR, arrivalTime + ONE_HOUR, null,
+					countryData);
+			entries.add(new DiaryEntry(i, arrivalTime, arrivalTime + ONE_HOUR, venueInfo, i % 3 == 0 ? "Comment " + i : null));
+		}
+		return entries;
+	}
+
+	private byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+}
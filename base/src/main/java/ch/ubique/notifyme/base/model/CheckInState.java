@@ -18,6 +18,13 @@ public class CheckInState {
 		this.selectedTimerOption = selectedTimerOption;
 	}
 
+	/**
+	 * Copies the given state. The VenueInfo is shared since it is never modified after it was parsed.
+	 */
+	public CheckInState(CheckInState other) {
+		this(other.isCheckedIn, other.venueInfo, other.checkInTime, other.checkOutTime, other.selectedTimerOption);
+	}
+
 	public boolean isCheckedIn() {
 		return isCheckedIn;
 	}
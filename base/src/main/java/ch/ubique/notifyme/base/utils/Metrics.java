@@ -0,0 +1,240 @@
+package ch.ubique.notifyme.base.utils;
+
+import android.os.Trace;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory timings and counters of the hot paths. Spans are recorded into fixed histograms and also emitted as
+ * {@link Trace} sections, so they show up in systrace and Perfetto. Recording does not allocate, so it can stay enabled in
+ * every build. The values are kept for the lifetime of the process and shown in the debug screen of the dev flavor.
+ */
+public class Metrics {
+
+	public enum Span {
+		TRACE_KEY_SYNC("TraceKeySync"),
+		TRACE_KEY_NETWORK("TraceKeyNetwork"),
+		TRACE_KEY_DECODE("TraceKeyDecode"),
+		TRACE_KEY_MATCHING("TraceKeyMatching"),
+		DIARY_LOAD("DiaryLoad"),
+		DIARY_WRITE("DiaryWrite"),
+		PREFERENCES_COMMIT("PreferencesCommit"),
+		QR_DECODE("QrDecode");
+
+		private final String sectionName;
+
+		Span(String sectionName) {
+			this.sectionName = sectionName;
+		}
+	}
+
+
+	public enum Counter {
+		DOWNLOADED_BYTES,
+		DOWNLOADED_EVENTS,
+		/**
+		 * Events passed to the matching, whether or not they matched a check-in
+		 */
+		EVENTS_CHECKED,
+		/**
+		 * Writes to the preferences that did not need a commit of their own because they were coalesced
+		 */
+		PREFERENCES_COALESCED_WRITES,
+		LOCATION_DATA_CACHE_HITS,
+		LOCATION_DATA_CACHE_MISSES,
+		QR_FRAMES,
+		/**
+		 * Frames whose Y plane could be read without copying it
+		 */
+		QR_ZERO_COPY_FRAMES,
+		/**
+		 * Stays constant while scanning as long as the frame size does not change
+		 */
+		QR_BUFFER_ALLOCATIONS,
+		QR_ALLOCATED_BUFFER_BYTES,
+		QR_VIEWFINDER_ATTEMPTS,
+		QR_VIEWFINDER_DECODES,
+		QR_DOWNSCALED_ATTEMPTS,
+		QR_DOWNSCALED_DECODES,
+		QR_FULL_RESOLUTION_ATTEMPTS,
+		QR_FULL_RESOLUTION_DECODES
+	}
+
+
+	private static final Histogram[] histograms = new Histogram[Span.values().length];
+	private static final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+
+	static {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Starts a span on the current thread, it has to be ended with {@link #endSpan} on the same thread
+	 * @return the start time to pass to {@link #endSpan}
+	 */
+	public static long beginSpan(Span span) {
+		Trace.beginSection(span.sectionName);
+		return System.nanoTime();
+	}
+
+	/**
+	 * @return the duration of the span in nanoseconds
+	 */
+	public static long endSpan(Span span, long startNanos) {
+		long durationNanos = System.nanoTime() - startNanos;
+		Trace.endSection();
+		record(span, durationNanos);
+		return durationNanos;
+	}
+
+	/**
+	 * Records a duration measured elsewhere, without a trace section
+	 */
+	public static void record(Span span, long durationNanos) {
+		histograms[span.ordinal()].record(durationNanos);
+	}
+
+	public static void increment(Counter counter) {
+		counters.incrementAndGet(counter.ordinal());
+	}
+
+	public static void add(Counter counter, long delta) {
+		counters.addAndGet(counter.ordinal(), delta);
+	}
+
+	public static long getCount(Counter counter) {
+		return counters.get(counter.ordinal());
+	}
+
+	public static Histogram getHistogram(Span span) {
+		return histograms[span.ordinal()];
+	}
+
+	public static void reset() {
+		for (Histogram histogram : histograms) {
+			histogram.reset();
+		}
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 0);
+		}
+	}
+
+	/**
+	 * @return a human readable summary of all spans and counters, for debugging only
+	 */
+	public static String getSummary() {
+		StringBuilder builder = new StringBuilder();
+		for (Span span : Span.values()) {
+			Histogram histogram = getHistogram(span);
+			builder.append(span.sectionName).append('\n');
+			if (histogram.getCount() == 0) {
+				builder.append("  -\n");
+				continue;
+			}
+			builder.append(String.format(Locale.US, "  n=%d mean=%.2fms p50<%.2fms p90<%.2fms p99<%.2fms max=%.2fms\n",
+					histogram.getCount(), toMillis(histogram.getMeanNanos()), toMillis(histogram.getPercentileNanos(50)),
+					toMillis(histogram.getPercentileNanos(90)), toMillis(histogram.getPercentileNanos(99)),
+					toMillis(histogram.getMaxNanos())));
+		}
+		for (Counter counter : Counter.values()) {
+			builder.append(counter.name()).append(": ").append(getCount(counter)).append('\n');
+		}
+		long matchingNanos = getHistogram(Span.TRACE_KEY_MATCHING).getTotalNanos();
+		if (matchingNanos > 0) {
+			builder.append(String.format(Locale.US, "Events checked per second: %.0f\n",
+					getCount(Counter.EVENTS_CHECKED) / (matchingNanos / (double) TimeUnit.SECONDS.toNanos(1))));
+		}
+		long networkNanos = getHistogram(Span.TRACE_KEY_NETWORK).getTotalNanos();
+		if (networkNanos > 0) {
+			builder.append(String.format(Locale.US, "Download rate: %.1f kB/s\n",
+					getCount(Counter.DOWNLOADED_BYTES) / 1000.0 / (networkNanos / (double) TimeUnit.SECONDS.toNanos(1))));
+		}
+		long locationDataRequests = getCount(Counter.LOCATION_DATA_CACHE_HITS) + getCount(Counter.LOCATION_DATA_CACHE_MISSES);
+		if (locationDataRequests > 0) {
+			builder.append(String.format(Locale.US, "Location data cache hit rate: %.1f%%\n",
+					100.0 * getCount(Counter.LOCATION_DATA_CACHE_HITS) / locationDataRequests));
+		}
+		return builder.toString();
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+
+	/**
+	 * Histogram with power of two buckets in microseconds, from below 1µs up to about 70 minutes. Percentiles are therefore
+	 * only accurate to a factor of two, which is enough to spot regressions.
+	 */
+	public static class Histogram {
+
+		private static final int BUCKET_COUNT = 33;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		private Histogram() { }
+
+		private void record(long durationNanos) {
+			long micros = Math.max(durationNanos, 0) / 1000;
+			int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+			buckets.incrementAndGet(bucket);
+			count.incrementAndGet();
+			totalNanos.addAndGet(durationNanos);
+			long max;
+			do {
+				max = maxNanos.get();
+			} while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos));
+		}
+
+		private void reset() {
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				buckets.set(i, 0);
+			}
+			count.set(0);
+			totalNanos.set(0);
+			maxNanos.set(0);
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getTotalNanos() {
+			return totalNanos.get();
+		}
+
+		public long getMeanNanos() {
+			long count = getCount();
+			return count == 0 ? 0 : getTotalNanos() / count;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		/**
+		 * @return the upper bound of the bucket containing the given percentile
+		 */
+		public long getPercentileNanos(int percentile) {
+			long count = getCount();
+			if (count == 0) return 0;
+			long threshold = (count * percentile + 99) / 100;
+			long seen = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				seen += buckets.get(i);
+				if (seen >= threshold) return TimeUnit.MICROSECONDS.toNanos(1L << i);
+			}
+			return getMaxNanos();
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+package ch.ubique.notifyme.base.utils;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.ProcessLifecycleOwner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces writes to a SharedPreferences file. Writes are collected per key for a short window and then committed
+ * together on a single background thread shared by all writers, so a burst of mutations only results in one commit.
+ * Reads through this class see pending writes immediately.
+ * <p>
+ * Unlike apply(), pending writes are not awaited by the framework when an activity stops, so the owners of a writer
+ * register their flush with {@link #flushWhenProcessStops(Runnable)} and flush after user-visible changes.
+ */
+public class PersistenceWriter {
+
+	private static final long COALESCING_WINDOW_MILLIS = 100;
+	private static final Object REMOVED = new Object();
+
+	private static ScheduledExecutorService executor;
+
+	private final SharedPreferences sharedPreferences;
+	private final HashMap<String, Object> pendingWrites = new HashMap<>();
+	private final Object commitLock = new Object();
+	private ScheduledFuture<?> scheduledFlush;
+	private int uncommittedWriteCount = 0;
+
+	public PersistenceWriter(SharedPreferences sharedPreferences) {
+		this.sharedPreferences = sharedPreferences;
+	}
+
+	private static synchronized ScheduledExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "PersistenceWriter");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Runs the given flush on the main thread whenever the last activity of the process has been stopped
+	 */
+	public static void flushWhenProcessStops(Runnable flush) {
+		new Handler(Looper.getMainLooper()).post(() -> ProcessLifecycleOwner.get().getLifecycle()
+				.addObserver((LifecycleEventObserver) (source, event) -> {
+					if (event == Lifecycle.Event.ON_STOP) flush.run();
+				}));
+	}
+
+	public void putString(String key, String value) {
+		enqueue(key, value == null ? REMOVED : value);
+	}
+
+	public void putLong(String key, long value) {
+		enqueue(key, value);
+	}
+
+	public void putBoolean(String key, boolean value) {
+		enqueue(key, value);
+	}
+
+	public void remove(String key) {
+		enqueue(key, REMOVED);
+	}
+
+	public synchronized String getString(String key, String defaultValue) {
+		if (!pendingWrites.containsKey(key)) return sharedPreferences.getString(key, defaultValue);
+		Object value = pendingWrites.get(key);
+		return value == REMOVED ? defaultValue : (String) value;
+	}
+
+	public synchronized long getLong(String key, long defaultValue) {
+		if (!pendingWrites.containsKey(key)) return sharedPreferences.getLong(key, defaultValue);
+		Object value = pendingWrites.get(key);
+		return value == REMOVED ? defaultValue : (Long) value;
+	}
+
+	public synchronized boolean getBoolean(String key, boolean defaultValue) {
+		if (!pendingWrites.containsKey(key)) return sharedPreferences.getBoolean(key, defaultValue);
+		Object value = pendingWrites.get(key);
+		return value == REMOVED ? defaultValue : (Boolean) value;
+	}
+
+	public synchronized boolean contains(String key) {
+		if (!pendingWrites.containsKey(key)) return sharedPreferences.contains(key);
+		return pendingWrites.get(key) != REMOVED;
+	}
+
+	/**
+	 * Synchronously commits all pending writes. Call this before the process might be stopped, e.g. at the end of a Worker
+	 * or BroadcastReceiver.
+	 */
+	public void flush() {
+		synchronized (this) {
+			if (scheduledFlush != null) {
+				scheduledFlush.cancel(false);
+				scheduledFlush = null;
+			}
+		}
+		commitPendingWrites();
+	}
+
+	private synchronized void enqueue(String key, Object value) {
+		pendingWrites.put(key, value);
+		uncommittedWriteCount++;
+		if (scheduledFlush == null) {
+			scheduledFlush = getExecutor().schedule(this::commitPendingWrites, COALESCING_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void commitPendingWrites() {
+		synchronized (commitLock) {
+			HashMap<String, Object> writes;
+			synchronized (this) {
+				scheduledFlush = null;
+				if (pendingWrites.isEmpty()) return;
+				writes = new HashMap<>(pendingWrites);
+				Metrics.add(Metrics.Counter.PREFERENCES_COALESCED_WRITES, Math.max(uncommittedWriteCount - 1, 0));
+				uncommittedWriteCount = 0;
+			}
+
+			long commitStart = Metrics.beginSpan(Metrics.Span.PREFERENCES_COMMIT);
+			SharedPreferences.Editor editor = sharedPreferences.edit();
+			for (Map.Entry<String, Object> write : writes.entrySet()) {
+				Object value = write.getValue();
+				if (value == REMOVED) {
+					editor.remove(write.getKey());
+				} else if (value instanceof String) {
+					editor.putString(write.getKey(), (String) value);
+				} else if (value instanceof Long) {
+					editor.putLong(write.getKey(), (Long) value);
+				} else if (value instanceof Boolean) {
+					editor.putBoolean(write.getKey(), (Boolean) value);
+				}
+			}
+			editor.commit();
+			Metrics.endSpan(Metrics.Span.PREFERENCES_COMMIT, commitStart);
+
+			synchronized (this) {
+				for (Map.Entry<String, Object> write : writes.entrySet()) {
+					// Only drop the pending write if it has not been overwritten in the meantime
+					if (pendingWrites.get(write.getKey()) == write.getValue()) {
+						pendingWrites.remove(write.getKey());
+					}
+				}
+			}
+		}
+	}
+
+}
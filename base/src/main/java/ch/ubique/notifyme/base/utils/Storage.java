@@ -3,6 +3,11 @@ package ch.ubique.notifyme.base.utils;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import com.google.gson.Gson;
 
 import ch.ubique.notifyme.base.model.CheckInState;
@@ -15,15 +20,37 @@ public class Storage {
 	@Deprecated private static final String KEY_CURRENT_CHECK_IN_V2 = "KEY_CURRENT_CHECK_IN";
 	private static final String KEY_CURRENT_CHECK_IN_V3 = "KEY_CURRENT_CHECK_IN_V3";
 	private static final String KEY_LAST_KEY_BUNDLE_TAG = "KEY_LAST_KEY_BUNDLE_TAG";
+	private static final String KEY_PARTIAL_SYNC_KEY_BUNDLE_TAG = "KEY_PARTIAL_SYNC_KEY_BUNDLE_TAG";
+	private static final String KEY_PARTIAL_SYNC_MATCHED_EVENT_COUNT = "KEY_PARTIAL_SYNC_MATCHED_EVENT_COUNT";
 	private static final String KEY_ONBOARDING_COMPLETE = "KEY_ONBOARDING_COMPLETE";
+	private static final String KEY_CONFIG = "KEY_CONFIG";
+	private static final String KEY_CONFIG_ETAG = "KEY_CONFIG_ETAG";
+	private static final String KEY_CONFIG_LAST_MODIFIED = "KEY_CONFIG_LAST_MODIFIED";
+	private static final String KEY_CONFIG_LAST_LOAD_TIME = "KEY_CONFIG_LAST_LOAD_TIME";
+	private static final String KEY_CONFIG_APP_VERSION = "KEY_CONFIG_APP_VERSION";
 
 	private static Storage instance;
 
-	private final SharedPreferences sharedPreferences;
+	private final PersistenceWriter persistenceWriter;
 	private final Gson gson = new Gson();
+	/**
+	 * The check-in state is read on every screen and by workers and receivers, so it is parsed only once per process and
+	 * kept in memory. Callers always get their own copy and the JSON is written on a background thread.
+	 */
+	private final ExecutorService checkInStateSerializer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "CheckInStateSerializer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Object checkInStateLock = new Object();
+	private volatile boolean checkInStateLoaded = false;
+	private volatile CheckInState checkInState;
+	private Future<?> pendingCheckInStateWrite;
 
 	private Storage(Context context) {
-		sharedPreferences = context.getSharedPreferences(KEY_SHARED_PREFERENCES_STORAGE, Context.MODE_PRIVATE);
+		SharedPreferences sharedPreferences = context.getSharedPreferences(KEY_SHARED_PREFERENCES_STORAGE, Context.MODE_PRIVATE);
+		persistenceWriter = new PersistenceWriter(sharedPreferences);
+		PersistenceWriter.flushWhenProcessStops(this::flush);
 	}
 
 	public static synchronized Storage getInstance(Context context) {
@@ -34,38 +61,130 @@ public class Storage {
 	}
 
 	public void setCheckInState(CheckInState checkInState) {
-		sharedPreferences.edit().putString(KEY_CURRENT_CHECK_IN_V3, gson.toJson(checkInState)).apply();
+		CheckInState copy = checkInState != null ? new CheckInState(checkInState) : null;
+		synchronized (checkInStateLock) {
+			this.checkInState = copy;
+			checkInStateLoaded = true;
+			pendingCheckInStateWrite = checkInStateSerializer.submit(
+					() -> persistenceWriter.putString(KEY_CURRENT_CHECK_IN_V3, gson.toJson(copy)));
+		}
 	}
 
+	/**
+	 * @return a copy of the current check-in state, changes only take effect once passed to {@link #setCheckInState}
+	 */
 	public CheckInState getCheckInState() {
-		migrateCheckInStateIfNecessary();
-		return gson.fromJson(sharedPreferences.getString(KEY_CURRENT_CHECK_IN_V3, null), CheckInState.class);
+		if (!checkInStateLoaded) {
+			synchronized (checkInStateLock) {
+				if (!checkInStateLoaded) {
+					checkInState = loadCheckInState();
+					checkInStateLoaded = true;
+				}
+			}
+		}
+		CheckInState current = checkInState;
+		return current != null ? new CheckInState(current) : null;
 	}
 
-	private void migrateCheckInStateIfNecessary() {
-		if (!sharedPreferences.contains(KEY_CURRENT_CHECK_IN_V2)) return;
-		CheckInStateDeprecatedV2 oldCheckInState =
-				gson.fromJson(sharedPreferences.getString(KEY_CURRENT_CHECK_IN_V2, null), CheckInStateDeprecatedV2.class);
-		if (oldCheckInState != null) {
-			setCheckInState(oldCheckInState.toCheckInState());
+	private CheckInState loadCheckInState() {
+		if (persistenceWriter.contains(KEY_CURRENT_CHECK_IN_V2)) {
+			CheckInStateDeprecatedV2 oldCheckInState =
+					gson.fromJson(persistenceWriter.getString(KEY_CURRENT_CHECK_IN_V2, null), CheckInStateDeprecatedV2.class);
+			persistenceWriter.remove(KEY_CURRENT_CHECK_IN_V2);
+			if (oldCheckInState != null) {
+				CheckInState migratedCheckInState = oldCheckInState.toCheckInState();
+				persistenceWriter.putString(KEY_CURRENT_CHECK_IN_V3, gson.toJson(migratedCheckInState));
+				return migratedCheckInState;
+			}
 		}
-		sharedPreferences.edit().remove(KEY_CURRENT_CHECK_IN_V2).apply();
+		return gson.fromJson(persistenceWriter.getString(KEY_CURRENT_CHECK_IN_V3, null), CheckInState.class);
 	}
 
 	public void setLastKeyBundleTag(long lastSync) {
-		sharedPreferences.edit().putLong(KEY_LAST_KEY_BUNDLE_TAG, lastSync).apply();
+		persistenceWriter.putLong(KEY_LAST_KEY_BUNDLE_TAG, lastSync);
+		persistenceWriter.remove(KEY_PARTIAL_SYNC_KEY_BUNDLE_TAG);
+		persistenceWriter.remove(KEY_PARTIAL_SYNC_MATCHED_EVENT_COUNT);
 	}
 
 	public long getLastKeyBundleTag() {
-		return sharedPreferences.getLong(KEY_LAST_KEY_BUNDLE_TAG, 0);
+		return persistenceWriter.getLong(KEY_LAST_KEY_BUNDLE_TAG, 0);
+	}
+
+	/**
+	 * Remembers how many events of the response with the given key bundle tag were matched before its download failed.
+	 * Cleared by {@link #setLastKeyBundleTag(long)}.
+	 */
+	public void setPartialSync(long keyBundleTag, long matchedEventCount) {
+		persistenceWriter.putLong(KEY_PARTIAL_SYNC_KEY_BUNDLE_TAG, keyBundleTag);
+		persistenceWriter.putLong(KEY_PARTIAL_SYNC_MATCHED_EVENT_COUNT, matchedEventCount);
+	}
+
+	public long getPartialSyncKeyBundleTag() {
+		return persistenceWriter.getLong(KEY_PARTIAL_SYNC_KEY_BUNDLE_TAG, -1);
+	}
+
+	public long getPartialSyncMatchedEventCount() {
+		return persistenceWriter.getLong(KEY_PARTIAL_SYNC_MATCHED_EVENT_COUNT, 0);
 	}
 
 	public void setOnboardingCompleted(boolean completed) {
-		sharedPreferences.edit().putBoolean(KEY_ONBOARDING_COMPLETE, completed).apply();
+		persistenceWriter.putBoolean(KEY_ONBOARDING_COMPLETE, completed);
 	}
 
 	public boolean getOnboardingCompleted() {
-		return sharedPreferences.getBoolean(KEY_ONBOARDING_COMPLETE, false);
+		return persistenceWriter.getBoolean(KEY_ONBOARDING_COMPLETE, false);
+	}
+
+	/**
+	 * @param appVersion the version code of the app that loaded the config, the server decides on a force update by it
+	 */
+	public void setConfig(String configJson, String etag, String lastModified, long appVersion) {
+		persistenceWriter.putString(KEY_CONFIG, configJson);
+		persistenceWriter.putString(KEY_CONFIG_ETAG, etag);
+		persistenceWriter.putString(KEY_CONFIG_LAST_MODIFIED, lastModified);
+		persistenceWriter.putLong(KEY_CONFIG_APP_VERSION, appVersion);
+	}
+
+	public String getConfig() {
+		return persistenceWriter.getString(KEY_CONFIG, null);
+	}
+
+	public String getConfigEtag() {
+		return persistenceWriter.getString(KEY_CONFIG_ETAG, null);
+	}
+
+	public String getConfigLastModified() {
+		return persistenceWriter.getString(KEY_CONFIG_LAST_MODIFIED, null);
+	}
+
+	public long getConfigAppVersion() {
+		return persistenceWriter.getLong(KEY_CONFIG_APP_VERSION, -1);
+	}
+
+	public void setConfigLastLoadTime(long lastLoadTime) {
+		persistenceWriter.putLong(KEY_CONFIG_LAST_LOAD_TIME, lastLoadTime);
+	}
+
+	public long getConfigLastLoadTime() {
+		return persistenceWriter.getLong(KEY_CONFIG_LAST_LOAD_TIME, 0);
+	}
+
+	/**
+	 * Synchronously persists all pending changes, see {@link PersistenceWriter#flush()}
+	 */
+	public void flush() {
+		Future<?> checkInStateWrite;
+		synchronized (checkInStateLock) {
+			checkInStateWrite = pendingCheckInStateWrite;
+		}
+		if (checkInStateWrite != null) {
+			try {
+				checkInStateWrite.get();
+			} catch (InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		persistenceWriter.flush();
 	}
 
 }
@@ -1,6 +1,9 @@
 package ch.ubique.notifyme.base.utils;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.text.Spannable;
 import android.text.SpannableString;
 import android.text.style.ForegroundColorSpan;
@@ -9,7 +12,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Locale;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -22,6 +25,27 @@ import ch.ubique.notifyme.base.R;
 public class StringUtils {
 
 	private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1);
+	private static final long ONE_DAY = TimeUnit.DAYS.toMillis(1);
+	/**
+	 * Durations at least this long are formatted without seconds by {@link #getShortDurationString(long)}
+	 */
+	public static final long SHORT_DURATION_WITHOUT_SECONDS = TimeUnit.HOURS.toMillis(10);
+
+	/**
+	 * Formatting runs per row bind and every second for the check-in timer, so strings are built in a reusable builder
+	 * per thread and everything derived from the time zone is cached until a time change broadcast is received
+	 */
+	private static final ThreadLocal<StringBuilder> stringBuilder = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(16);
+		}
+	};
+	private static final ThreadLocal<CachedDateFormat> checkOutDateFormat = new ThreadLocal<>();
+	private static volatile boolean timeChangeReceiverRegistered = false;
+	private static volatile TimeZone timeZone;
+	private static volatile DayBounds dayBounds;
+	private static volatile int formatGeneration = 0;
 
 	public static SpannableString getTwoColoredString(String wholeString, String substring, int substringColor) {
 
@@ -41,33 +65,30 @@ public class StringUtils {
 	 * @return a formatted duration String
 	 */
 	public static String getShortDurationString(long duration) {
-		if (duration >= TimeUnit.HOURS.toMillis(10)) {
-			return String.format(Locale.GERMAN, "%d:%02d",
-					TimeUnit.MILLISECONDS.toHours(duration),
-					TimeUnit.MILLISECONDS.toMinutes(duration - TimeUnit.HOURS.toMillis(TimeUnit.MILLISECONDS.toHours(duration)))
-			);
+		if (duration >= SHORT_DURATION_WITHOUT_SECONDS) {
+			StringBuilder builder = getStringBuilder();
+			builder.append(TimeUnit.MILLISECONDS.toHours(duration)).append(':');
+			appendTwoDigits(builder, TimeUnit.MILLISECONDS.toMinutes(duration) % 60);
+			return builder.toString();
 		} else {
 			return getDurationString(duration);
 		}
 	}
 
 	public static String getDurationString(long duration) {
+		StringBuilder builder = getStringBuilder();
 		if (duration >= ONE_HOUR) {
-			return String.format(Locale.GERMAN, "%d:%02d:%02d",
-					TimeUnit.MILLISECONDS.toHours(duration),
-					TimeUnit.MILLISECONDS.toMinutes(duration - TimeUnit.HOURS.toMillis(TimeUnit.MILLISECONDS.toHours(duration))),
-					TimeUnit.MILLISECONDS.toSeconds(duration - TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(duration)))
-			);
+			builder.append(TimeUnit.MILLISECONDS.toHours(duration)).append(':');
+			appendTwoDigits(builder, TimeUnit.MILLISECONDS.toMinutes(duration) % 60).append(':');
 		} else {
-			return String.format(Locale.GERMAN, "%02d:%02d",
-					TimeUnit.MILLISECONDS.toMinutes(duration),
-					TimeUnit.MILLISECONDS.toSeconds(duration - TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(duration)))
-			);
+			appendTwoDigits(builder, TimeUnit.MILLISECONDS.toMinutes(duration)).append(':');
 		}
+		appendTwoDigits(builder, TimeUnit.MILLISECONDS.toSeconds(duration) % 60);
+		return builder.toString();
 	}
 
 	public static String getCheckOutDateString(Context context, long checkInTime, long checkOutTime) {
-		DateFormat dateFormat = new SimpleDateFormat("EEEE, dd. MMMM");
+		DateFormat dateFormat = getCheckOutDateFormat();
 		String checkInDate = dateFormat.format(new Date(checkInTime));
 		String checkOutDate = dateFormat.format(new Date(checkOutTime));
 		if (checkInDate.equals(checkOutDate)) {
@@ -79,13 +100,17 @@ public class StringUtils {
 	}
 
 	public static String getHourMinuteTimeString(long timeStamp, String delimiter) {
-		Calendar time = Calendar.getInstance();
-		time.setTimeInMillis(timeStamp);
-		return prependZero(time.get(Calendar.HOUR_OF_DAY)) + delimiter + prependZero(time.get(Calendar.MINUTE));
+		long localTime = timeStamp + getTimeZone().getOffset(timeStamp);
+		long minuteOfDay = TimeUnit.MILLISECONDS.toMinutes(((localTime % ONE_DAY) + ONE_DAY) % ONE_DAY);
+		StringBuilder builder = getStringBuilder();
+		appendTwoDigits(builder, minuteOfDay / 60).append(delimiter);
+		appendTwoDigits(builder, minuteOfDay % 60);
+		return builder.toString();
 	}
 
 	public static String getDaysAgoString(long timeStamp, Context context) {
-		final long diff = getStartOfDay().getTime() - timeStamp;
+		registerTimeChangeReceiver(context);
+		final long diff = getStartOfDay() - timeStamp;
 		if (diff < 0) {
 			return context.getResources().getString(R.string.report_message_today);
 		} else {
@@ -99,22 +124,110 @@ public class StringUtils {
 		}
 	}
 
-	private static String prependZero(int timeUnit) {
-		if (timeUnit < 10) {
-			return "0" + timeUnit;
-		} else {
-			return String.valueOf(timeUnit);
+	/**
+	 * Registers a receiver that invalidates the cached time zone, start of day and date formats when the date, time,
+	 * time zone or locale changes. Until it is registered, nothing that depends on the time zone is cached.
+	 */
+	public static synchronized void registerTimeChangeReceiver(Context context) {
+		if (timeChangeReceiverRegistered) return;
+		IntentFilter intentFilter = new IntentFilter();
+		intentFilter.addAction(Intent.ACTION_DATE_CHANGED);
+		intentFilter.addAction(Intent.ACTION_TIME_CHANGED);
+		intentFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+		intentFilter.addAction(Intent.ACTION_LOCALE_CHANGED);
+		context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				invalidateTimeCaches();
+			}
+		}, intentFilter);
+		timeChangeReceiverRegistered = true;
+		invalidateTimeCaches();
+	}
+
+	private static void invalidateTimeCaches() {
+		timeZone = null;
+		dayBounds = null;
+		formatGeneration++;
+	}
+
+	private static TimeZone getTimeZone() {
+		if (!timeChangeReceiverRegistered) return TimeZone.getDefault();
+		TimeZone currentTimeZone = timeZone;
+		if (currentTimeZone == null) {
+			currentTimeZone = TimeZone.getDefault();
+			timeZone = currentTimeZone;
+		}
+		return currentTimeZone;
+	}
+
+	private static DateFormat getCheckOutDateFormat() {
+		CachedDateFormat cachedDateFormat = checkOutDateFormat.get();
+		int generation = formatGeneration;
+		if (cachedDateFormat == null || cachedDateFormat.generation != generation || !timeChangeReceiverRegistered) {
+			cachedDateFormat = new CachedDateFormat(new SimpleDateFormat("EEEE, dd. MMMM"), generation);
+			checkOutDateFormat.set(cachedDateFormat);
+		}
+		return cachedDateFormat.dateFormat;
+	}
+
+	private static StringBuilder getStringBuilder() {
+		StringBuilder builder = stringBuilder.get();
+		builder.setLength(0);
+		return builder;
+	}
+
+	private static StringBuilder appendTwoDigits(StringBuilder builder, long value) {
+		if (value >= 0 && value < 10) builder.append('0');
+		return builder.append(value);
+	}
+
+	/**
+	 * @return the start of the current day, recomputed only once the day is over or the time zone has changed
+	 */
+	private static long getStartOfDay() {
+		long now = System.currentTimeMillis();
+		DayBounds currentDayBounds = dayBounds;
+		if (currentDayBounds == null || now < currentDayBounds.start || now >= currentDayBounds.end ||
+				!timeChangeReceiverRegistered) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(now);
+			calendar.set(Calendar.HOUR_OF_DAY, 0);
+			calendar.set(Calendar.MINUTE, 0);
+			calendar.set(Calendar.SECOND, 0);
+			calendar.set(Calendar.MILLISECOND, 0);
+			long start = calendar.getTimeInMillis();
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+			currentDayBounds = new DayBounds(start, calendar.getTimeInMillis());
+			dayBounds = currentDayBounds;
 		}
+		return currentDayBounds.start;
 	}
 
-	private static Date getStartOfDay() {
-		Calendar calendar = Calendar.getInstance();
-		calendar.setTime(new Date());
-		calendar.set(Calendar.HOUR_OF_DAY, 0);
-		calendar.set(Calendar.MINUTE, 0);
-		calendar.set(Calendar.SECOND, 0);
-		calendar.set(Calendar.MILLISECOND, 0);
-		return calendar.getTime();
+
+	private static class DayBounds {
+
+		private final long start;
+		private final long end;
+
+		private DayBounds(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+	}
+
+
+	private static class CachedDateFormat {
+
+		private final DateFormat dateFormat;
+		private final int generation;
+
+		private CachedDateFormat(DateFormat dateFormat, int generation) {
+			this.dateFormat = dateFormat;
+			this.generation = generation;
+		}
+
 	}
 
 }
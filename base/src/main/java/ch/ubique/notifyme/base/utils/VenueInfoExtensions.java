@@ -1,7 +1,9 @@
 package ch.ubique.notifyme.base.utils;
 
+import android.util.LruCache;
 import androidx.annotation.DrawableRes;
 
+import java.util.Arrays;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 
@@ -12,16 +14,41 @@ import ch.ubique.notifyme.base.R;
 
 public class VenueInfoExtensions {
 
+	private static final int LOCATION_DATA_CACHE_SIZE = 64;
+
+	/**
+	 * Parsed location data keyed by the content of the country data, the parsed messages are immutable and can be shared
+	 */
+	private static final LruCache<CountryDataKey, Proto.NotifyMeLocationData> locationDataCache =
+			new LruCache<>(LOCATION_DATA_CACHE_SIZE);
 
 	public static Proto.NotifyMeLocationData getNotifyMeLocationData(VenueInfo venueInfo) {
-		if (venueInfo.getCountryData() == null) return Proto.NotifyMeLocationData.newBuilder().build();
+		if (venueInfo.getCountryData() == null) return Proto.NotifyMeLocationData.getDefaultInstance();
+		CountryDataKey key = new CountryDataKey(venueInfo.getCountryData());
+		Proto.NotifyMeLocationData notifyMeLocationData = locationDataCache.get(key);
+		if (notifyMeLocationData == null) {
+			Metrics.increment(Metrics.Counter.LOCATION_DATA_CACHE_MISSES);
+			notifyMeLocationData = parseNotifyMeLocationData(venueInfo.getCountryData());
+			// The key keeps its own copy, so that a later change of the country data can not corrupt the cache
+			locationDataCache.put(new CountryDataKey(venueInfo.getCountryData().clone()), notifyMeLocationData);
+		} else {
+			Metrics.increment(Metrics.Counter.LOCATION_DATA_CACHE_HITS);
+		}
+		return notifyMeLocationData;
+	}
+
+	private static Proto.NotifyMeLocationData parseNotifyMeLocationData(byte[] countryData) {
 		try {
-			return Proto.NotifyMeLocationData.parseFrom(venueInfo.getCountryData());
+			return Proto.NotifyMeLocationData.parseFrom(countryData);
 		} catch (InvalidProtocolBufferException e) {
-			return Proto.NotifyMeLocationData.newBuilder().build();
+			return Proto.NotifyMeLocationData.getDefaultInstance();
 		}
 	}
 
+	public static Proto.VenueType getVenueType(VenueInfo venueInfo) {
+		return getNotifyMeLocationData(venueInfo).getType();
+	}
+
 	public static String getSubtitle(VenueInfo venueInfo) {
 		Proto.NotifyMeLocationData notifyMeLocationData = getNotifyMeLocationData(venueInfo);
 		if (notifyMeLocationData.getRoom() == null || notifyMeLocationData.getRoom().equals("")) {
@@ -33,7 +60,7 @@ public class VenueInfoExtensions {
 
 	@DrawableRes
 	public static int getVenueTypeDrawable(VenueInfo venueInfo) {
-		return getDrawableForVenueType(getNotifyMeLocationData(venueInfo).getType());
+		return getDrawableForVenueType(getVenueType(venueInfo));
 	}
 
 	@DrawableRes
@@ -64,4 +91,29 @@ public class VenueInfoExtensions {
 		}
 	}
 
+	private static class CountryDataKey {
+
+		private final byte[] countryData;
+		private final int hashCode;
+
+		private CountryDataKey(byte[] countryData) {
+			this.countryData = countryData;
+			this.hashCode = Arrays.hashCode(countryData);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof CountryDataKey)) return false;
+			CountryDataKey that = (CountryDataKey) o;
+			return hashCode == that.hashCode && Arrays.equals(countryData, that.countryData);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+	}
+
 }
@@ -0,0 +1,72 @@
+package ch.ubique.notifyme.base.utils;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the timing of the formatters with the implementations they replaced. Only runs with -Pbenchmark, e.g.
+ * ./gradlew :base:testDevDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+public class StringUtilsBenchmark {
+
+	private static final int ITERATIONS = 200000;
+	private static final int WARMUP_ROUNDS = 2;
+
+	private final Random random = new Random(42);
+	private TimeZone defaultTimeZone;
+
+	@Before
+	public void setUp() {
+		assumeTrue("Benchmarks only run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+		defaultTimeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Zurich"));
+	}
+
+	@After
+	public void tearDown() {
+		if (defaultTimeZone != null) TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	public void formatters() {
+		long[] values = new long[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++) {
+			values[i] = (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(5));
+		}
+		long now = System.currentTimeMillis();
+
+		long checksum = 0;
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (long value : values) checksum += StringUtilsTest.oldShortDurationString(value).length();
+			long oldDurationNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (long value : values) checksum += StringUtils.getShortDurationString(value).length();
+			long newDurationNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (long value : values) checksum += StringUtilsTest.oldHourMinuteTimeString(now + value, ":").length();
+			long oldTimeNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (long value : values) checksum += StringUtils.getHourMinuteTimeString(now + value, ":").length();
+			long newTimeNanos = System.nanoTime() - start;
+
+			if (round == WARMUP_ROUNDS) {
+				System.out.println(String.format(Locale.US, "getShortDurationString: %.0fns before, %.0fns after per call",
+						oldDurationNanos / (double) ITERATIONS, newDurationNanos / (double) ITERATIONS));
+				System.out.println(String.format(Locale.US, "getHourMinuteTimeString: %.0fns before, %.0fns after per call",
+						oldTimeNanos / (double) ITERATIONS, newTimeNanos / (double) ITERATIONS));
+			}
+		}
+		// Keeps the results alive, so the formatting can not be optimized away
+		System.out.println("checksum " + checksum);
+	}
+
+}
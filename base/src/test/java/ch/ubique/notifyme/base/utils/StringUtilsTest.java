@@ -0,0 +1,138 @@
+package ch.ubique.notifyme.base.utils;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the formatters with the Calendar and String.format based implementations they replaced
+ */
+public class StringUtilsTest {
+
+	private static final String[] TIME_ZONES = new String[] {
+			"Europe/Zurich", "UTC", "America/New_York", "America/St_Johns", "Asia/Kathmandu", "Australia/Lord_Howe",
+			"Pacific/Chatham", "Pacific/Apia"
+	};
+	private static final long DURATION_RANGE = TimeUnit.DAYS.toMillis(5);
+
+	private final Random random = new Random(42);
+	private TimeZone defaultTimeZone;
+
+	@Before
+	public void setUp() {
+		defaultTimeZone = TimeZone.getDefault();
+	}
+
+	@After
+	public void tearDown() {
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	public void hourMinuteTimeAroundDstChanges() {
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Zurich"));
+		// 2021-03-28 01:00 UTC and 2021-10-31 01:00 UTC, when Zurich switches to and from summer time
+		long[] dstChanges = new long[] { 1616893200000L, 1635642000000L };
+		for (long dstChange : dstChanges) {
+			for (long time = dstChange - TimeUnit.HOURS.toMillis(3); time <= dstChange + TimeUnit.HOURS.toMillis(3);
+					time += TimeUnit.SECONDS.toMillis(30)) {
+				assertEquals(oldHourMinuteTimeString(time, ":"), StringUtils.getHourMinuteTimeString(time, ":"));
+			}
+		}
+		assertEquals("01:59", StringUtils.getHourMinuteTimeString(1616893200000L - 1, ":"));
+		assertEquals("03:00", StringUtils.getHourMinuteTimeString(1616893200000L, ":"));
+		assertEquals("02:59", StringUtils.getHourMinuteTimeString(1635642000000L - 1, ":"));
+		assertEquals("02:00", StringUtils.getHourMinuteTimeString(1635642000000L, ":"));
+	}
+
+	@Test
+	public void hourMinuteTimeInOtherTimeZones() {
+		for (String timeZoneId : TIME_ZONES) {
+			TimeZone.setDefault(TimeZone.getTimeZone(timeZoneId));
+			for (int i = 0; i < 10000; i++) {
+				// Between 1950 and 2100, including times before the epoch
+				long time = -631152000000L + (long) (random.nextDouble() * 4733510400000L);
+				assertEquals(timeZoneId + " " + time, oldHourMinuteTimeString(time, "."),
+						StringUtils.getHourMinuteTimeString(time, "."));
+			}
+		}
+	}
+
+	@Test
+	public void durationBoundaries() {
+		long[] durations = new long[] {
+				0, 999, 1000, 59999, 60000, TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(1) - 1,
+				TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(10) - 1, TimeUnit.HOURS.toMillis(10),
+				TimeUnit.HOURS.toMillis(10) + TimeUnit.MINUTES.toMillis(5) + 59999, TimeUnit.HOURS.toMillis(100),
+				TimeUnit.DAYS.toMillis(50) + 12345, -1, -999, -1000, -59999, -60000, -65000, -TimeUnit.HOURS.toMillis(2)
+		};
+		for (long duration : durations) {
+			assertEquals(String.valueOf(duration), oldDurationString(duration), StringUtils.getDurationString(duration));
+			assertEquals(String.valueOf(duration), oldShortDurationString(duration),
+					StringUtils.getShortDurationString(duration));
+		}
+		assertEquals("00:00", StringUtils.getDurationString(0));
+		assertEquals("9:59:59", StringUtils.getShortDurationString(TimeUnit.HOURS.toMillis(10) - 1));
+		assertEquals("10:00", StringUtils.getShortDurationString(TimeUnit.HOURS.toMillis(10)));
+		assertEquals("100:00:00", StringUtils.getDurationString(TimeUnit.HOURS.toMillis(100)));
+	}
+
+	@Test
+	public void randomDurations() {
+		for (int i = 0; i < 100000; i++) {
+			long duration = (long) ((random.nextDouble() * 2 - 1) * DURATION_RANGE);
+			assertEquals(String.valueOf(duration), oldDurationString(duration), StringUtils.getDurationString(duration));
+			assertEquals(String.valueOf(duration), oldShortDurationString(duration),
+					StringUtils.getShortDurationString(duration));
+		}
+	}
+
+	static String oldShortDurationString(long duration) {
+		if (duration >= TimeUnit.HOURS.toMillis(10)) {
+			return String.format(Locale.GERMAN, "%d:%02d",
+					TimeUnit.MILLISECONDS.toHours(duration),
+					TimeUnit.MILLISECONDS.toMinutes(duration - TimeUnit.HOURS.toMillis(TimeUnit.MILLISECONDS.toHours(duration)))
+			);
+		} else {
+			return oldDurationString(duration);
+		}
+	}
+
+	static String oldDurationString(long duration) {
+		if (duration >= TimeUnit.HOURS.toMillis(1)) {
+			return String.format(Locale.GERMAN, "%d:%02d:%02d",
+					TimeUnit.MILLISECONDS.toHours(duration),
+					TimeUnit.MILLISECONDS.toMinutes(duration - TimeUnit.HOURS.toMillis(TimeUnit.MILLISECONDS.toHours(duration))),
+					TimeUnit.MILLISECONDS.toSeconds(duration - TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(duration)))
+			);
+		} else {
+			return String.format(Locale.GERMAN, "%02d:%02d",
+					TimeUnit.MILLISECONDS.toMinutes(duration),
+					TimeUnit.MILLISECONDS.toSeconds(duration - TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(duration)))
+			);
+		}
+	}
+
+	static String oldHourMinuteTimeString(long timeStamp, String delimiter) {
+		Calendar time = Calendar.getInstance();
+		time.setTimeInMillis(timeStamp);
+		return prependZero(time.get(Calendar.HOUR_OF_DAY)) + delimiter + prependZero(time.get(Calendar.MINUTE));
+	}
+
+	private static String prependZero(int timeUnit) {
+		if (timeUnit < 10) {
+			return "0" + timeUnit;
+		} else {
+			return String.valueOf(timeUnit);
+		}
+	}
+
+}
@@ -57,6 +57,7 @@ public class OnboardingHintsFragment extends Fragment {
 		} else {
 			// Complete the onboarding if this is the installable app
 			Storage.getInstance(requireContext()).setOnboardingCompleted(true);
+			Storage.getInstance(requireContext()).flush();
 			requireActivity().finish();
 		}
 	}
@@ -115,6 +115,7 @@ public class OnboardingInstantAppFragment extends Fragment {
 
 		InstantApps.showInstallPrompt(requireActivity(), postInstallIntent, REQUEST_CODE_INSTALL, null);
 		Storage.getInstance(requireContext()).setOnboardingCompleted(true);
+		Storage.getInstance(requireContext()).flush();
 	}
 
 	private void storeInstantAppCookie() {